@@ -0,0 +1,95 @@
+package com.comp6411.a3.bench;
+
+import com.comp6411.a3.RequestParameters;
+import com.comp6411.a3.ftpserver.DirectoryIndex;
+import com.comp6411.a3.ftpserver.HTTPFS;
+import com.comp6411.a3.ftpserver.HTTPFSAccess;
+import com.comp6411.a3.ftpserver.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures HTTPFS.handleClientRequest against a temporary directory of FILES small files: a GET
+ * listing them, a GET of one of them and a POST overwriting one. Requests are handed over already
+ * parsed, so only the file server's own work is timed, not the transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HTTPFSBenchmark {
+
+    private static final int FILES = 100;
+
+    private Path directory;
+    private HTTPFS httpfs;
+    private DirectoryIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("httpfs-bench");
+        for (int i = 0; i < FILES; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int line = 0; line < 20; line++) {
+                content.append("line ").append(line).append(" of file ").append(i).append('\n');
+            }
+            Files.write(directory.resolve("file" + i + ".txt"), content.toString().getBytes(UTF_8));
+        }
+        httpfs = new HTTPFS();
+        index = HTTPFSAccess.openDirectory(httpfs, directory + "/");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        index.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Response getListing() {
+        return handle("GET", "/", null);
+    }
+
+    @Benchmark
+    public Response getFile() {
+        return handle("GET", "/file7.txt", null);
+    }
+
+    @Benchmark
+    public Response postFile() {
+        return handle("POST", "/post/file9.txt", "{\"assignment\": 3, \"course\": \"COMP6411\"}");
+    }
+
+    private Response handle(String method, String path, String body) {
+        RequestParameters parameters = new RequestParameters(method, path);
+        parameters.processPath();
+        parameters.host = "localhost:8007";
+        parameters.createURL();
+        if (body != null) {
+            parameters.postData = body;
+        }
+        return HTTPFSAccess.handleClientRequest(httpfs, parameters);
+    }
+}
@@ -0,0 +1,72 @@
+package com.comp6411.a3.bench;
+
+import com.comp6411.a3.Packet;
+import com.comp6411.a3.PacketView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoding and decoding of packets: Packet.toBuffer, fromBuffer and fromBytes, for a
+ * full DATA packet and an empty ACK, and PacketView.wrap over the same bytes for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PacketBenchmark {
+
+    @Param({"data", "ack"})
+    public String kind;
+
+    private Packet packet;
+    private byte[] bytes;
+    private ByteBuffer buf;
+    private final PacketView view = new PacketView();
+
+    @Setup
+    public void setUp() throws IOException {
+        InetAddress peer = InetAddress.getByName("127.0.0.1");
+        byte[] payload = new byte["data".equals(kind) ? Packet.MAX_PAYLOAD : 0];
+        packet = new Packet("data".equals(kind) ? Packet.DATA : Packet.ACK, 42, peer, 8007, payload);
+        bytes = packet.toBytes();
+        buf = packet.toBuffer();
+    }
+
+    @Benchmark
+    public ByteBuffer toBuffer() {
+        return packet.toBuffer();
+    }
+
+    @Benchmark
+    public Packet fromBuffer() throws IOException {
+        buf.rewind();
+        return Packet.fromBuffer(buf);
+    }
+
+    @Benchmark
+    public Packet fromBytes() throws IOException {
+        return Packet.fromBytes(bytes);
+    }
+
+    @Benchmark
+    public long viewWrap() throws IOException {
+        buf.rewind();
+        return view.wrap(buf).getSequenceNumber();
+    }
+}
@@ -0,0 +1,77 @@
+package com.comp6411.a3.bench;
+
+import com.comp6411.a3.RequestParameters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures RequestParameters.processMessage, on a GET head and on a POST with a body, and
+ * processPath, on a plain path and on one with a query string. These still parse the requests of
+ * the TCP server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RequestParametersBenchmark {
+
+    // Fields rather than constants, so the JIT cannot fold the parsing of them.
+    private String get = "GET /get/hello.txt HTTP/1.1\r\n"
+            + "Host: localhost:8007\r\n"
+            + "User-Agent: httpc/1.0\r\n"
+            + "Accept: */*\r\n"
+            + "\r\n";
+
+    private String post = "POST /post/hello.txt HTTP/1.1\r\n"
+            + "Host: localhost:8007\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: 40\r\n"
+            + "\r\n"
+            + "{\"assignment\": 3, \"course\": \"COMP6411\"}";
+
+    private String plainPath = "/get/hello.txt";
+    private String queryPath = "/get?course=COMP6411&assignment=3";
+
+    @Benchmark
+    public RequestParameters processMessageGet() {
+        return processMessage(get);
+    }
+
+    @Benchmark
+    public RequestParameters processMessagePost() {
+        return processMessage(post);
+    }
+
+    @Benchmark
+    public RequestParameters processPathPlain() {
+        return processPath(plainPath);
+    }
+
+    @Benchmark
+    public RequestParameters processPathQuery() {
+        return processPath(queryPath);
+    }
+
+    private static RequestParameters processMessage(String message) {
+        RequestParameters parameters = new RequestParameters("GET", "/");
+        parameters.processMessage(message);
+        return parameters;
+    }
+
+    private static RequestParameters processPath(String path) {
+        RequestParameters parameters = new RequestParameters("GET", path);
+        parameters.processPath();
+        return parameters;
+    }
+}
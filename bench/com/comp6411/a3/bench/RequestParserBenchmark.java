@@ -0,0 +1,92 @@
+package com.comp6411.a3.bench;
+
+import com.comp6411.a3.Packet;
+import com.comp6411.a3.RequestParameters;
+import com.comp6411.a3.RequestParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares the server's request parsing before and after RequestParser; run with -prof gc for the
+ * bytes allocated per request. The old path decodes the whole head to a String, splits it into
+ * lines and words, and fills a new RequestParameters. The new one parses the received segments in
+ * place into one reused RequestParameters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RequestParserBenchmark {
+
+    private static final String REQUEST = "POST /post/hello.txt?debug=true&size=1 HTTP/1.1\r\n"
+            + "Host: localhost:8007\r\n"
+            + "User-Agent: httpc/1.0\r\n"
+            + "Accept: */*\r\n"
+            + "Content-Type: text/plain\r\n"
+            + "Content-Length: 11\r\n"
+            + "\r\n"
+            + "hello world";
+
+    private byte[] request;
+    private ByteBuffer[] segments;
+    private final RequestParser parser = new RequestParser();
+    private final RequestParameters parameters = new RequestParameters();
+
+    @Setup
+    public void setUp() {
+        request = REQUEST.getBytes(UTF_8);
+        segments = segments(request, Packet.MAX_PAYLOAD);
+    }
+
+    /**
+     * The parsing done by HTTPFS before RequestParser.
+     */
+    @Benchmark
+    public RequestParameters split() {
+        String payload = new String(request, UTF_8);
+        String[] methodHeader = payload.split("\r\n")[0].split(" ");
+        RequestParameters parameters = new RequestParameters(methodHeader[0], methodHeader[1]);
+        parameters.processPath();
+        parameters.processMessage(payload);
+        parameters.createURL();
+        return parameters;
+    }
+
+    @Benchmark
+    public void parser(Blackhole blackhole) {
+        parser.reset(parameters);
+        for (ByteBuffer segment : segments) {
+            segment.rewind();
+            parser.parse(segment);
+            int limit = parser.bodySlice(segment);
+            blackhole.consume(segment.remaining());
+            segment.limit(limit);
+        }
+        blackhole.consume(parameters);
+    }
+
+    private static ByteBuffer[] segments(byte[] data, int size) {
+        ByteBuffer[] segments = new ByteBuffer[(data.length + size - 1) / size];
+        for (int i = 0; i < segments.length; i++) {
+            int offset = i * size;
+            segments[i] = ByteBuffer.wrap(data, offset, Math.min(size, data.length - offset)).slice();
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,26 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.RequestParameters;
+
+import java.io.IOException;
+
+/**
+ * Gives the benchmarks the package-private entry points of HTTPFS they drive directly, without
+ * opening a socket. Only part of the JMH build, HTTPFS itself keeps them package-private.
+ */
+public final class HTTPFSAccess {
+
+    private HTTPFSAccess() {
+    }
+
+    /**
+     * See HTTPFS.openDirectory. The caller closes the returned index.
+     */
+    public static DirectoryIndex openDirectory(HTTPFS httpfs, String directory) throws IOException {
+        return httpfs.openDirectory(directory);
+    }
+
+    public static Response handleClientRequest(HTTPFS httpfs, RequestParameters parameters) {
+        return httpfs.handleClientRequest(parameters);
+    }
+}
@@ -0,0 +1,90 @@
+package com.comp6411.a3;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AdaptiveRetransmissionPolicy estimates the timeout from measured round trip times with the
+ * Jacobson/Karels algorithm (RFC 6298):
+ * SRTT and RTTVAR are exponentially weighted averages of the samples and their deviation, and
+ * RTO = SRTT + 4 * RTTVAR, kept within [minTimeout, maxTimeout].
+ * Every timeout doubles the RTO (exponential backoff) until the next valid sample recomputes it,
+ * or until a retransmitted packet gets through. Under heavy loss nearly every packet is
+ * retransmitted, and waiting for a valid sample would leave the RTO stuck at its maximum.
+ */
+public class AdaptiveRetransmissionPolicy implements RetransmissionPolicy {
+
+    public static final long DEFAULT_INITIAL_TIMEOUT = 1000;
+    public static final long DEFAULT_MIN_TIMEOUT = 20;
+    public static final long DEFAULT_MAX_TIMEOUT = 10000;
+
+    private final long minTimeoutNanos;
+    private final long maxTimeoutNanos;
+
+    private long smoothedRtt = -1;
+    private long rttVariance;
+    private long timeoutNanos;
+
+    public AdaptiveRetransmissionPolicy() {
+        this(DEFAULT_INITIAL_TIMEOUT, DEFAULT_MIN_TIMEOUT, DEFAULT_MAX_TIMEOUT);
+    }
+
+    /**
+     * All timeouts are in milliseconds.
+     */
+    public AdaptiveRetransmissionPolicy(long initialTimeout, long minTimeout, long maxTimeout) {
+        this.minTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(minTimeout);
+        this.maxTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(maxTimeout);
+        this.timeoutNanos = clamp(TimeUnit.MILLISECONDS.toNanos(initialTimeout));
+    }
+
+    @Override
+    public long timeoutNanos() {
+        return timeoutNanos;
+    }
+
+    @Override
+    public void onRttSample(long rttNanos) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rttNanos;
+            rttVariance = rttNanos / 2;
+        } else {
+            // beta = 1/4, alpha = 1/8
+            rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rttNanos)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rttNanos) / 8;
+        }
+        timeoutNanos = clamp(smoothedRtt + 4 * rttVariance);
+    }
+
+    @Override
+    public void onTimeout() {
+        timeoutNanos = clamp(timeoutNanos * 2);
+    }
+
+    @Override
+    public void onRetransmissionAcknowledged() {
+        if (smoothedRtt >= 0) {
+            timeoutNanos = clamp(smoothedRtt + 4 * rttVariance);
+        }
+    }
+
+    /**
+     * Smoothed round trip time in nanoseconds, or -1 before the first sample.
+     */
+    public long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    public long getRttVariance() {
+        return rttVariance;
+    }
+
+    private long clamp(long nanos) {
+        return Math.max(minTimeoutNanos, Math.min(maxTimeoutNanos, nanos));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("srtt=%.3fms rttvar=%.3fms rto=%.3fms", smoothedRtt / 1e6, rttVariance / 1e6,
+                timeoutNanos / 1e6);
+    }
+}
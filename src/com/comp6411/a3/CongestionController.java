@@ -0,0 +1,44 @@
+package com.comp6411.a3;
+
+import java.util.function.Supplier;
+
+/**
+ * CongestionController sizes the number of packets a ReliableConnection may have in flight.
+ * The connection never sends beyond its flow control window either, so the effective window is
+ * the smaller of the two. One instance belongs to one connection.
+ */
+public interface CongestionController {
+
+    /**
+     * Congestion window in packets, at least 1.
+     */
+    int congestionWindow();
+
+    /**
+     * Called for every newly acknowledged packet.
+     */
+    void onAck(long now);
+
+    /**
+     * Called when a loss was detected through duplicate ACKs and the packet was fast retransmitted.
+     * The connection reports at most one loss per window of data.
+     */
+    void onFastRetransmit(long now);
+
+    /**
+     * Called when a retransmission timer expired.
+     */
+    void onTimeout(long now);
+
+    /**
+     * Returns a factory for the controller with the given name: "reno" or "cubic".
+     */
+    static Supplier<CongestionController> forName(String name) {
+        if (name.equalsIgnoreCase("reno")) {
+            return NewRenoCongestionController::new;
+        } else if (name.equalsIgnoreCase("cubic")) {
+            return CubicCongestionController::new;
+        }
+        throw new IllegalArgumentException("Unknown congestion controller: " + name);
+    }
+}
@@ -0,0 +1,21 @@
+package com.comp6411.a3;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a peer stops answering: a packet or handshake was retransmitted the maximum number
+ * of times, or a deadline passed, without an acknowledgement. The connection cannot be used
+ * afterwards.
+ */
+public class ConnectionFailedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConnectionFailedException(String message) {
+        super(message);
+    }
+
+    public ConnectionFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,87 @@
+package com.comp6411.a3;
+
+/**
+ * CubicCongestionController implements CUBIC (RFC 8312). After a loss the window follows
+ * W(t) = C * (t - K)^3 + Wmax, which climbs back quickly towards the window where the loss
+ * happened, flattens around it and then probes beyond it. The estimate of a Reno flow is used as
+ * a floor so CUBIC is never slower than AIMD on short RTT paths like the local router.
+ */
+public class CubicCongestionController implements CongestionController {
+
+    public static final int INITIAL_WINDOW = 4;
+    private static final double C = 0.4;
+    private static final double BETA = 0.7;
+    private static final double MIN_WINDOW = 2;
+
+    private double window = INITIAL_WINDOW;
+    private double slowStartThreshold = Double.MAX_VALUE;
+    private double maxWindow;
+    private double originWindow;
+    private double renoWindow;
+    private double k;
+    private long epochStart = -1;
+
+    @Override
+    public int congestionWindow() {
+        return Math.max(1, (int) window);
+    }
+
+    @Override
+    public void onAck(long now) {
+        if (window < slowStartThreshold) {
+            window += 1;
+            return;
+        }
+        if (epochStart < 0) {
+            epochStart = now;
+            renoWindow = window;
+            if (window < maxWindow) {
+                k = Math.cbrt((maxWindow - window) / C);
+                originWindow = maxWindow;
+            } else {
+                k = 0;
+                originWindow = window;
+            }
+        }
+
+        double t = (now - epochStart) / 1e9;
+        double target = originWindow + C * Math.pow(t - k, 3);
+        renoWindow += 3 * (1 - BETA) / (1 + BETA) / window;
+        target = Math.max(target, renoWindow);
+
+        if (target > window) {
+            window += (target - window) / window;
+        } else {
+            window += 0.01 / window;
+        }
+    }
+
+    @Override
+    public void onFastRetransmit(long now) {
+        reduce();
+        window = Math.max(window * BETA, MIN_WINDOW);
+        slowStartThreshold = window;
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        reduce();
+        slowStartThreshold = Math.max(window * BETA, MIN_WINDOW);
+        window = 1;
+    }
+
+    private void reduce() {
+        epochStart = -1;
+        // Fast convergence: release bandwidth when the window keeps shrinking.
+        if (window < maxWindow) {
+            maxWindow = window * (1 + BETA) / 2;
+        } else {
+            maxWindow = window;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cubic cwnd=%.1f ssthresh=%.1f wmax=%.1f", window, slowStartThreshold, maxWindow);
+    }
+}
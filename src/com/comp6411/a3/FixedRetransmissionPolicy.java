@@ -0,0 +1,32 @@
+package com.comp6411.a3;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FixedRetransmissionPolicy always waits the same amount of time, ignoring RTT samples.
+ */
+public class FixedRetransmissionPolicy implements RetransmissionPolicy {
+
+    private final long timeoutNanos;
+
+    public FixedRetransmissionPolicy(long timeoutMillis) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    @Override
+    public long timeoutNanos() {
+        return timeoutNanos;
+    }
+
+    @Override
+    public void onRttSample(long rttNanos) {
+    }
+
+    @Override
+    public void onTimeout() {
+    }
+
+    @Override
+    public void onRetransmissionAcknowledged() {
+    }
+}
@@ -0,0 +1,232 @@
+package com.comp6411.a3;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram counts durations in nanoseconds in log-linear buckets, in the manner of an HDR
+ * histogram: below 128 every value has its own bucket, above that each power of two is split into
+ * 64 buckets, so any recorded value is reported within 1.6% of its true value, from nanoseconds to
+ * days, in a fixed 30 KB.
+ * Recording is a few atomic increments and never allocates, so it can be done on hot paths from
+ * any number of threads; the count and the sum, which every record updates, are striped LongAdders.
+ * Percentiles read while values are recorded are approximate.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration, in nanoseconds. Negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        if (value < min.get()) {
+            min.accumulateAndGet(value, Math::min);
+        }
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Adds every value recorded by other to this histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n > 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        min.accumulateAndGet(other.min.get(), Math::min);
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * The smallest value recorded, or 0 if there is none.
+     */
+    public long getMin() {
+        return count.sum() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * The value below which the given percentage of the recorded values fall, e.g. 99.9. The value
+     * is the upper end of its bucket, and never more than the largest value recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalent(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * The count, mean and usual percentiles as of now, e.g. to be exposed through JMX.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99),
+                getPercentile(99.9), getMax());
+    }
+
+    /**
+     * Forgets every value recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * The usual percentiles on one line, e.g. "p50 1.20ms p90 3.41ms p99 8.02ms p99.9 12.5ms max 13.0ms".
+     */
+    public String summary() {
+        return "p50 " + format(getPercentile(50)) + " p90 " + format(getPercentile(90))
+                + " p99 " + format(getPercentile(99)) + " p99.9 " + format(getPercentile(99.9))
+                + " max " + format(getMax());
+    }
+
+    @Override
+    public String toString() {
+        return getCount() + " values, mean " + format((long) getMean()) + ", " + summary();
+    }
+
+    /**
+     * A duration in nanoseconds with three significant digits and the unit that suits it.
+     */
+    public static String format(long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return nanos + "ns";
+        }
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return significant(nanos / 1e3) + "us";
+        }
+        if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+            return significant(nanos / 1e6) + "ms";
+        }
+        return significant(nanos / 1e9) + "s";
+    }
+
+    private static String significant(double value) {
+        if (value >= 100) {
+            return String.format("%.0f", value);
+        }
+        return String.format(value >= 10 ? "%.1f" : "%.2f", value);
+    }
+
+    /**
+     * A LatencyHistogram summed up at one point in time, in nanoseconds. An MXBean attribute of this
+     * type is shown as a composite of its getters.
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Snapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Keep the top SUB_BUCKET_BITS bits of the value, the shift says which power of two it is in.
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestEquivalent(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,198 @@
+package com.comp6411.a3;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Log prints diagnostic messages to System.out from a background thread, so the threads logging
+ * them never wait on the console. Messages go into a bounded lock-free ring buffer, which the
+ * writer thread drains in batches, one print and flush per batch. When the buffer is full the
+ * message is dropped and counted rather than blocking the caller. An idle writer is parked until
+ * the next message arrives, so a quiet process has no thread waking up for nothing.
+ * Messages are given as Suppliers, called only if their level is enabled, so a disabled message
+ * costs a volatile read and builds no string. Events that may happen once per packet also take a
+ * Sampler, which lets one of every N through.
+ */
+public final class Log {
+
+    public enum Level {
+        DEBUG, INFO, WARN, OFF
+    }
+
+    /**
+     * Lets the first event and then one of every rate through, see Log.debug(Sampler, Supplier).
+     * Thread safe, one Sampler is shared by every thread logging the same event.
+     */
+    public static final class Sampler {
+        private final long rate;
+        private final AtomicLong events = new AtomicLong();
+
+        public Sampler(long rate) {
+            if (rate < 1) {
+                throw new IllegalArgumentException("Invalid sampling rate: " + rate);
+            }
+            this.rate = rate;
+        }
+
+        boolean sample() {
+            return events.getAndIncrement() % rate == 0;
+        }
+
+        long getRate() {
+            return rate;
+        }
+    }
+
+    private static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static volatile Level level = Level.INFO;
+
+    // Slot i holds message number i modulo CAPACITY, or null once written out. Producers claim
+    // numbers by incrementing tail, the writer alone advances head past the messages it printed.
+    private static final AtomicReferenceArray<String> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong();
+    private static volatile long head;
+    private static final LongAdder dropped = new LongAdder();
+    // Set by the writer before it parks, producers only pay for an unpark while it is set.
+    private static volatile boolean sleeping;
+    private static final Thread writer;
+
+    static {
+        writer = new Thread(Log::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    public static void setLevel(Level level) {
+        Log.level = level;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(Log.level) >= 0;
+    }
+
+    public static void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void debug(Sampler sampler, Supplier<String> message) {
+        log(Level.DEBUG, sampler, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(Supplier<String> message) {
+        log(Level.WARN, message);
+    }
+
+    public static void warn(Sampler sampler, Supplier<String> message) {
+        log(Level.WARN, sampler, message);
+    }
+
+    public static void log(Level level, Supplier<String> message) {
+        if (isEnabled(level)) {
+            enqueue(message.get());
+        }
+    }
+
+    /**
+     * Logs message if its level is enabled and sampler lets it through, marking it as sampled.
+     */
+    public static void log(Level level, Sampler sampler, Supplier<String> message) {
+        if (isEnabled(level) && sampler.sample()) {
+            long rate = sampler.getRate();
+            enqueue(rate == 1 ? message.get() : message.get() + " (1 in " + rate + " logged)");
+        }
+    }
+
+    /**
+     * Waits, for at most a second, until every message logged so far has been printed.
+     */
+    public static void flush() {
+        long logged = tail.get();
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+        while (head < logged && System.nanoTime() - deadline < 0) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    private static void enqueue(String message) {
+        long number;
+        do {
+            number = tail.get();
+            if (number - head >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(number, number + 1));
+        // A volatile store, so either the writer sees the message before parking or we see it asleep.
+        ring.set((int) (number & MASK), message);
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private static void drain() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            if (writeBatch(batch) == 0) {
+                sleeping = true;
+                // Re-check after announcing it, a message stored before that would not unpark us.
+                if (ring.get((int) (head & MASK)) == null) {
+                    LockSupport.park();
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    /**
+     * Prints the messages published so far in one go, and returns how many there were.
+     */
+    private static int writeBatch(StringBuilder batch) {
+        long next = head;
+        int count = 0;
+        while (count < CAPACITY) {
+            int slot = (int) (next & MASK);
+            // A claimed slot stays null until its producer has stored the message.
+            String message = ring.get(slot);
+            if (message == null) {
+                break;
+            }
+            ring.lazySet(slot, null);
+            batch.append(message).append(System.lineSeparator());
+            next++;
+            count++;
+        }
+        long lost = dropped.sumThenReset();
+        if (lost > 0) {
+            batch.append("(").append(lost).append(" log messages dropped, the log buffer was full)")
+                    .append(System.lineSeparator());
+        }
+        if (batch.length() > 0) {
+            System.out.print(batch);
+            System.out.flush();
+            batch.setLength(0);
+        }
+        // Only now may producers reuse the slots.
+        head = next;
+        return count;
+    }
+}
@@ -0,0 +1,31 @@
+package com.comp6411.a3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * MessageReceiver consumes the messages of a ReliableConnection as they arrive, segment by segment
+ * and in order, instead of having each one reassembled in memory first. It is called on the thread
+ * handling the connection's packets.
+ */
+public interface MessageReceiver {
+
+    /**
+     * Next bytes of the current message. The buffer is reused once this returns.
+     */
+    void onData(ByteBuffer data) throws IOException;
+
+    /**
+     * False while the receiver cannot take more data, e.g. while its writes to disk are behind.
+     * The connection then holds the segments back in its receive window, which stops the peer a
+     * window ahead, until ReliableConnection.resumeDelivery is called.
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    /**
+     * The current message is complete, the next data belongs to a new one.
+     */
+    void onMessageEnd() throws IOException;
+}
@@ -0,0 +1,71 @@
+package com.comp6411.a3;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics publishes statistics objects, e.g. TransportStats, to the platform MBeanServer, where
+ * jconsole or any JMX client can read them, and dumps them periodically as text for runs without
+ * a JMX client at hand.
+ * The statistics objects count on their own, with LongAdders and LatencyHistograms, so neither
+ * publishing nor dumping adds any work to the code they measure.
+ */
+public final class Metrics {
+
+    public static final String DOMAIN = "com.comp6411.a3";
+
+    private Metrics() {
+    }
+
+    /**
+     * Registers bean as DOMAIN:type=type,name=name, replacing what was registered under that name.
+     * bean must implement an interface named after its class with the MXBean suffix.
+     */
+    public static void register(String type, String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            try {
+                server.registerMBean(bean, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(objectName);
+                server.registerMBean(bean, objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Cannot register " + type + " " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Prints every source, named by its key, every period until the returned Closeable is closed.
+     * The printing thread is a daemon, it does not keep the JVM alive.
+     */
+    public static Closeable dumpPeriodically(Map<String, ?> sources, long period, TimeUnit unit) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> System.out.print(dump(sources)), period, period, unit);
+        return timer::shutdownNow;
+    }
+
+    /**
+     * Every source on its own line, after its key.
+     */
+    public static String dump(Map<String, ?> sources) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, ?> source : sources.entrySet()) {
+            text.append('[').append(source.getKey()).append("] ").append(source.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+}
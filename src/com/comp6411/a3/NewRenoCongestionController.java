@@ -0,0 +1,46 @@
+package com.comp6411.a3;
+
+/**
+ * NewRenoCongestionController implements AIMD in the style of TCP NewReno:
+ * slow start grows the window by one packet per ACK up to ssthresh, congestion avoidance by one
+ * packet per window, a fast retransmit halves the window and a timeout restarts from one packet.
+ */
+public class NewRenoCongestionController implements CongestionController {
+
+    public static final int INITIAL_WINDOW = 4;
+    public static final int MIN_SSTHRESH = 2;
+
+    private double window = INITIAL_WINDOW;
+    private double slowStartThreshold = Double.MAX_VALUE;
+
+    @Override
+    public int congestionWindow() {
+        return Math.max(1, (int) window);
+    }
+
+    @Override
+    public void onAck(long now) {
+        if (window < slowStartThreshold) {
+            window += 1;
+        } else {
+            window += 1 / window;
+        }
+    }
+
+    @Override
+    public void onFastRetransmit(long now) {
+        slowStartThreshold = Math.max(window / 2, MIN_SSTHRESH);
+        window = slowStartThreshold;
+    }
+
+    @Override
+    public void onTimeout(long now) {
+        slowStartThreshold = Math.max(window / 2, MIN_SSTHRESH);
+        window = 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("reno cwnd=%.1f ssthresh=%.1f", window, slowStartThreshold);
+    }
+}
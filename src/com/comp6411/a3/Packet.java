@@ -14,10 +14,25 @@ public class Packet {
 
     public static final int MIN_LEN = 11;
     public static final int MAX_LEN = 11 + 1024;
+    public static final int MAX_PAYLOAD = MAX_LEN - MIN_LEN;
+
+    // Packet types carried in the first byte of the header.
+    // FIN is a DATA packet that also carries the last segment of a message.
+    // SYN and SYN_ACK open a connection and always use sequence number 0.
+    public static final int DATA = 0;
+    public static final int ACK = 1;
+    public static final int FIN = 2;
+    public static final int SYN = 3;
+    public static final int SYN_ACK = 4;
+
+    // Malformed datagrams may arrive at the packet rate, only some of them are logged.
+    private static final Log.Sampler BAD_LENGTH_SAMPLER = new Log.Sampler(100);
 
     private final int type;
     private final long sequenceNumber;
     private final InetAddress peerAddress;
+    // The header form of peerAddress, computed once so writing a packet does not allocate.
+    private final int peerAddressBits;
     private final int peerPort;
     private final byte[] payload;
 
@@ -26,6 +41,7 @@ public class Packet {
         this.type = type;
         this.sequenceNumber = sequenceNumber;
         this.peerAddress = peerAddress;
+        this.peerAddressBits = addressBits(peerAddress);
         this.peerPort = peerPort;
         this.payload = payload;
     }
@@ -68,11 +84,35 @@ public class Packet {
      * The order of the buffer should be set as BigEndian.
      */
     private void write(ByteBuffer buf) {
+        writeHeader(buf, type, sequenceNumber, peerAddressBits, peerPort);
+        buf.put(payload);
+    }
+
+    /**
+     * Writes the packet into a caller supplied buffer, e.g. one from PacketBufferPool,
+     * instead of allocating a new one.
+     */
+    public void writeTo(ByteBuffer buf) {
+        write(buf);
+    }
+
+    /**
+     * Writes only the header of a packet, the caller then puts the payload right after it.
+     * The peer address is given as the big endian int from addressBits so nothing is allocated.
+     * Only the low 32 bits of sequenceNumber are written, see ReliableConnection.unwrap.
+     */
+    public static void writeHeader(ByteBuffer buf, int type, long sequenceNumber, int peerAddress, int peerPort) {
         buf.put((byte) type);
         buf.putInt((int) sequenceNumber);
-        buf.put(peerAddress.getAddress());
+        buf.putInt(peerAddress);
         buf.putShort((short) peerPort);
-        buf.put(payload);
+    }
+
+    /**
+     * Returns the IPv4 address as the int stored in the packet header.
+     */
+    public static int addressBits(InetAddress address) {
+        return ByteBuffer.wrap(address.getAddress()).getInt();
     }
 
     /**
@@ -101,7 +141,8 @@ public class Packet {
      */
     public static Packet fromBuffer(ByteBuffer buf) throws IOException {
         if (buf.limit() < MIN_LEN || buf.limit() > MAX_LEN) {
-            System.out.println("Packet length when exception: " + buf.limit());
+            int length = buf.limit();
+            Log.warn(BAD_LENGTH_SAMPLER, () -> "Packet length when exception: " + length);
             throw new IOException("Invalid length");
         }
 
@@ -0,0 +1,59 @@
+package com.comp6411.a3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PacketBufferPool recycles direct buffers of Packet.MAX_LEN bytes so the send and receive
+ * paths do not allocate per packet. Direct buffers are also handed to the socket without the
+ * extra copy NIO makes for heap buffers.
+ * When the pool is empty a new buffer is allocated, and buffers released into a full pool are
+ * simply dropped, so the pool never blocks.
+ */
+public class PacketBufferPool {
+
+    private static final PacketBufferPool SHARED = new PacketBufferPool(4096);
+
+    private final ByteBuffer[] free;
+    private int size;
+
+    public PacketBufferPool(int capacity) {
+        this.free = new ByteBuffer[capacity];
+    }
+
+    /**
+     * The pool shared by the client and the server within one JVM.
+     */
+    public static PacketBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a cleared BigEndian buffer of Packet.MAX_LEN bytes.
+     */
+    public ByteBuffer acquire() {
+        synchronized (this) {
+            if (size > 0) {
+                ByteBuffer buf = free[--size];
+                free[size] = null;
+                buf.clear();
+                return buf;
+            }
+        }
+        return ByteBuffer.allocateDirect(Packet.MAX_LEN);
+    }
+
+    public void release(ByteBuffer buf) {
+        if (buf == null) {
+            return;
+        }
+        synchronized (this) {
+            if (size < free.length) {
+                free[size++] = buf;
+            }
+        }
+    }
+
+    public synchronized int available() {
+        return size;
+    }
+}
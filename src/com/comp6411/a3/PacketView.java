@@ -0,0 +1,130 @@
+package com.comp6411.a3;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+/**
+ * PacketView is a flyweight over a raw packet. The header fields are read in place and the
+ * payload is exposed as a slice, so the same view can be pointed at every received datagram
+ * without copying it or resolving the peer address.
+ * The view is only valid until the underlying buffer is reused.
+ */
+public class PacketView {
+
+    private ByteBuffer buf;
+    private int start;
+    private int length;
+
+    /**
+     * Points the view at the packet between the position and the limit of buf (BigEndian).
+     */
+    public PacketView wrap(ByteBuffer buf) throws IOException {
+        int length = buf.remaining();
+        if (length < Packet.MIN_LEN || length > Packet.MAX_LEN) {
+            throw new IOException("Invalid length: " + length);
+        }
+        this.buf = buf;
+        this.start = buf.position();
+        this.length = length;
+        return this;
+    }
+
+    public int getType() {
+        return Byte.toUnsignedInt(buf.get(start));
+    }
+
+    public long getSequenceNumber() {
+        return Integer.toUnsignedLong(buf.getInt(start + 1));
+    }
+
+    public int getPeerAddressBits() {
+        return buf.getInt(start + 5);
+    }
+
+    public int getPeerPort() {
+        return Short.toUnsignedInt(buf.getShort(start + 9));
+    }
+
+    /**
+     * Peer address and port packed in a single long, usable as a connection key.
+     */
+    public long getPeerKey() {
+        return peerKey(getPeerAddressBits(), getPeerPort());
+    }
+
+    public static long peerKey(int peerAddress, int peerPort) {
+        return (Integer.toUnsignedLong(peerAddress) << 16) | peerPort;
+    }
+
+    /**
+     * Resolves the peer address. This allocates, so it is meant for the slow paths only.
+     */
+    public InetAddress getPeerAddress() throws UnknownHostException {
+        int bits = getPeerAddressBits();
+        return Inet4Address.getByAddress(new byte[]{
+                (byte) (bits >>> 24), (byte) (bits >>> 16), (byte) (bits >>> 8), (byte) bits});
+    }
+
+    public int getPayloadLength() {
+        return length - Packet.MIN_LEN;
+    }
+
+    /**
+     * Returns the payload as a slice sharing the underlying buffer.
+     */
+    public ByteBuffer getPayload() {
+        ByteBuffer payload = buf.duplicate();
+        payload.limit(start + length).position(start + Packet.MIN_LEN);
+        return payload.slice();
+    }
+
+    /**
+     * Copies the payload into dst starting at offset and returns the number of bytes copied.
+     */
+    public int copyPayload(byte[] dst, int offset) {
+        int payloadLength = getPayloadLength();
+        ByteBuffer payload = buf.duplicate();
+        payload.position(start + Packet.MIN_LEN);
+        payload.get(dst, offset, payloadLength);
+        return payloadLength;
+    }
+
+    public boolean payloadEquals(byte[] expected) {
+        if (expected.length != getPayloadLength()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != buf.get(start + Packet.MIN_LEN + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the whole raw packet into dst, e.g. to keep it after the receive buffer is reused.
+     */
+    public void copyTo(ByteBuffer dst) {
+        ByteBuffer raw = buf.duplicate();
+        raw.limit(start + length).position(start);
+        dst.put(raw);
+    }
+
+    /**
+     * Decodes the viewed bytes into a regular Packet.
+     */
+    public Packet toPacket() throws IOException {
+        ByteBuffer raw = buf.duplicate();
+        raw.limit(start + length).position(start);
+        return Packet.fromBuffer(raw.slice());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d type=%d port=%d, size=%d", getSequenceNumber(), getType(), getPeerPort(),
+                getPayloadLength());
+    }
+}
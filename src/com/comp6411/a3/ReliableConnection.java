@@ -0,0 +1,544 @@
+package com.comp6411.a3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReliableConnection implements Selective-Repeat ARQ on top of the unreliable Packet transport.
+ * Every DATA packet is acknowledged individually. The sender keeps up to windowSize packets in
+ * flight, each with its own retransmission timer, and the receiver buffers out-of-order packets
+ * inside its window until the missing ones arrive.
+ * Messages of any size are split into MAX_PAYLOAD sized DATA segments, the last one being sent as
+ * a FIN packet, and are reassembled in order on the peer, or streamed to a MessageReceiver.
+ * Packets are encoded straight into buffers from a PacketBufferPool and received packets are read
+ * through a PacketView, so no Packet objects are created on the data path.
+ * Timers follow the connection's RetransmissionPolicy, which is fed an RTT sample for every
+ * acknowledged packet that was transmitted only once. Every packet waits for the same timeout, so
+ * the timers expire in the order the packets were sent: they are kept in a FIFO of transmissions,
+ * and finding the next one to fire does not scan the window.
+ * The number of packets in flight is further limited by a CongestionController. A packet that is
+ * overtaken by DUPLICATE_ACK_THRESHOLD acknowledgements of later packets is considered lost and
+ * fast retransmitted without waiting for its timer.
+ * A MessageReceiver that is not ready has the segments held back in the receive window, which are
+ * still acknowledged, so the sender stops a window ahead until resumeDelivery.
+ * Sequence numbers are longs on both sides and only their low 32 bits go on the wire, unwrapped
+ * against the window base on receipt, so they never run out.
+ */
+public class ReliableConnection {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64;
+    public static final int DUPLICATE_ACK_THRESHOLD = 3;
+    public static final int DEFAULT_MAX_TRANSMISSIONS = 16;
+
+    // Sequence number 0 is used by the handshake, data starts right after it.
+    public static final long FIRST_SEQUENCE_NUMBER = 1;
+
+    // Queued in pendingData to mark where the current message ends.
+    private static final ByteBuffer END_OF_MESSAGE = ByteBuffer.allocate(0);
+
+    private final DatagramChannel channel;
+    private final SocketAddress routerAddress;
+    private final InetAddress peerAddress;
+    private final int peerAddressBits;
+    private final int peerPort;
+    private final int windowSize;
+    private final RetransmissionPolicy retransmissionPolicy;
+    private final CongestionController congestionController;
+    private final PacketBufferPool pool;
+    private int maxTransmissions = DEFAULT_MAX_TRANSMISSIONS;
+    private TransportStats stats;
+
+    // Sender side: ring of encoded unacknowledged packets indexed by sequence number modulo the window.
+    private final ByteBuffer[] sendWindow;
+    private final long[] sentAt;
+    private final int[] transmissions;
+    private final int[] laterAcks;
+    private final boolean[] acknowledged;
+    private final Deque<ByteBuffer> pendingData = new ArrayDeque<>();
+    private int pendingBytes;
+    private int pendingMessageEnds;
+    private long sendBase = FIRST_SEQUENCE_NUMBER;
+    private long nextSequenceNumber = FIRST_SEQUENCE_NUMBER;
+    private int inFlight;
+    // Losses of packets below this point belong to a window that was already reduced.
+    private long recoveryPoint = FIRST_SEQUENCE_NUMBER;
+    // Timers expiring before this time belong to a timeout that was already backed off.
+    private long nextTimeoutEventAt = System.nanoTime();
+    // Ring of (sequence number, sent at) per transmission, oldest first. An entry is stale once its
+    // packet is acknowledged or sent again, and is skipped when it reaches the head.
+    private long[] timerSequenceNumbers;
+    private long[] timerSentAt;
+    private int timerHead;
+    private int timerCount;
+    private boolean closed;
+
+    // Receiver side: ring of raw packets received ahead of receiveBase.
+    private final ByteBuffer[] receiveWindow;
+    private final PacketView bufferedView = new PacketView();
+    private final byte[] segmentBytes = new byte[Packet.MAX_PAYLOAD];
+    private final ByteBuffer segmentBuffer = ByteBuffer.wrap(segmentBytes);
+    private MessageReceiver receiver;
+    private final Deque<byte[]> deliveredMessages = new ArrayDeque<>();
+    private final ByteArrayOutputStream currentMessage = new ByteArrayOutputStream();
+    private long receiveBase = FIRST_SEQUENCE_NUMBER;
+
+    private final ByteBuffer ackBuffer;
+    private final PacketView receivedView = new PacketView();
+
+    public ReliableConnection(DatagramChannel channel, SocketAddress routerAddress, InetAddress peerAddress,
+                              int peerPort, int windowSize, RetransmissionPolicy retransmissionPolicy,
+                              CongestionController congestionController) {
+        this(channel, routerAddress, peerAddress, peerPort, windowSize, retransmissionPolicy, congestionController,
+                PacketBufferPool.shared());
+    }
+
+    public ReliableConnection(DatagramChannel channel, SocketAddress routerAddress, InetAddress peerAddress,
+                              int peerPort, int windowSize, RetransmissionPolicy retransmissionPolicy,
+                              CongestionController congestionController, PacketBufferPool pool) {
+        this.channel = channel;
+        this.routerAddress = routerAddress;
+        this.peerAddress = peerAddress;
+        this.peerAddressBits = Packet.addressBits(peerAddress);
+        this.peerPort = peerPort;
+        this.windowSize = windowSize;
+        this.retransmissionPolicy = retransmissionPolicy;
+        this.congestionController = congestionController;
+        this.pool = pool;
+        this.sendWindow = new ByteBuffer[windowSize];
+        this.sentAt = new long[windowSize];
+        this.transmissions = new int[windowSize];
+        this.laterAcks = new int[windowSize];
+        this.acknowledged = new boolean[windowSize];
+        this.timerSequenceNumbers = new long[2 * windowSize];
+        this.timerSentAt = new long[2 * windowSize];
+        this.receiveWindow = new ByteBuffer[windowSize];
+        this.ackBuffer = pool.acquire();
+    }
+
+    public InetAddress getPeerAddress() {
+        return peerAddress;
+    }
+
+    public int getPeerPort() {
+        return peerPort;
+    }
+
+    public RetransmissionPolicy getRetransmissionPolicy() {
+        return retransmissionPolicy;
+    }
+
+    public CongestionController getCongestionController() {
+        return congestionController;
+    }
+
+    /**
+     * Sets how many times a packet is sent before the peer is given up on, 0 for no limit.
+     */
+    public void setMaxTransmissions(int maxTransmissions) {
+        this.maxTransmissions = maxTransmissions;
+    }
+
+    /**
+     * Counts the packets of this connection in stats, which may be shared with other connections.
+     * Null, the default, counts nothing.
+     */
+    public void setStats(TransportStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Queues a complete message for reliable delivery and transmits it as soon as the window allows.
+     */
+    public void send(byte[] message) throws IOException {
+        write(ByteBuffer.wrap(message));
+        endMessage();
+    }
+
+    /**
+     * Appends the remaining bytes of data to the message being sent. Segments are only cut when
+     * the window has room for them, so the buffer must not be modified until it is consumed.
+     */
+    public void write(ByteBuffer data) throws IOException {
+        if (data.hasRemaining()) {
+            pendingData.add(data);
+            pendingBytes += data.remaining();
+            fillWindow();
+        }
+    }
+
+    /**
+     * Marks the end of the message being sent. Its last segment goes out as a FIN packet.
+     */
+    public void endMessage() throws IOException {
+        pendingData.add(END_OF_MESSAGE);
+        pendingMessageEnds++;
+        fillWindow();
+    }
+
+    /**
+     * Streams incoming messages to receiver instead of queueing them for nextMessage.
+     */
+    public void setReceiver(MessageReceiver receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Delivers the segments held back in the receive window while the MessageReceiver was not
+     * ready, as far as it takes them now.
+     */
+    public void resumeDelivery() throws IOException {
+        if (!closed) {
+            deliverBuffered();
+        }
+    }
+
+    /**
+     * Returns the next message delivered in order by the peer, or null if none is available yet.
+     */
+    public byte[] nextMessage() {
+        return deliveredMessages.poll();
+    }
+
+    /**
+     * Returns true while some queued message has not been acknowledged by the peer.
+     */
+    public boolean hasUnacknowledged() {
+        return sendBase < nextSequenceNumber || !pendingData.isEmpty();
+    }
+
+    /**
+     * Processes a packet received from the peer: ACKs slide the send window, DATA and FIN packets
+     * are acknowledged, buffered and reassembled in order.
+     */
+    public void handle(Packet packet) throws IOException {
+        handle(receivedView.wrap(packet.toBuffer()));
+    }
+
+    /**
+     * Same as handle(Packet) for a packet still sitting in the receive buffer. Nothing is kept
+     * pointing at that buffer once this returns.
+     */
+    public void handle(PacketView packet) throws IOException {
+        int type = packet.getType();
+        if (type == Packet.ACK) {
+            if (stats != null) {
+                stats.onAckReceived();
+            }
+            handleAck(unwrap(packet.getSequenceNumber(), sendBase));
+        } else if (type == Packet.DATA || type == Packet.FIN) {
+            handleData(packet);
+        }
+    }
+
+    /**
+     * Retransmits every packet in the window whose timer has expired. Per packet timers expire in
+     * bursts after a loss, so the timeout is backed off and the congestion window shrunk at most
+     * once per timeout interval, like a single TCP retransmission timer would.
+     * Throws ConnectionFailedException once a packet has been sent maxTransmissions times.
+     */
+    public void retransmitExpired() throws IOException {
+        long now = System.nanoTime();
+        long timeoutNanos = retransmissionPolicy.timeoutNanos();
+        boolean expired = false;
+        while (nextTimer() && now - timerSentAt[timerHead] >= timeoutNanos) {
+            long seq = timerSequenceNumbers[timerHead];
+            int slot = slot(seq);
+            if (maxTransmissions > 0 && transmissions[slot] >= maxTransmissions) {
+                throw new ConnectionFailedException("Packet #" + seq + " to " + peerAddress + ":" + peerPort
+                        + " not acknowledged after " + transmissions[slot] + " transmissions");
+            }
+            popTimer();
+            transmit(sendWindow[slot]);
+            sentAt[slot] = now;
+            transmissions[slot]++;
+            pushTimer(seq, now);
+            expired = true;
+            if (stats != null) {
+                stats.onTimeoutRetransmission();
+            }
+        }
+        if (expired && now - nextTimeoutEventAt >= 0) {
+            retransmissionPolicy.onTimeout();
+            congestionController.onTimeout(now);
+            recoveryPoint = nextSequenceNumber;
+            nextTimeoutEventAt = now + timeoutNanos;
+        }
+    }
+
+    /**
+     * Milliseconds until the earliest retransmission timer fires, or -1 if nothing is in flight.
+     */
+    public long nextTimeoutMillis() {
+        if (!nextTimer()) {
+            return -1;
+        }
+        long earliest = timerSentAt[timerHead] + retransmissionPolicy.timeoutNanos();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(earliest - System.nanoTime()));
+    }
+
+    /**
+     * Returns every buffer held by this connection to the pool. The connection must not be used
+     * afterwards.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int i = 0; i < windowSize; i++) {
+            pool.release(sendWindow[i]);
+            sendWindow[i] = null;
+            pool.release(receiveWindow[i]);
+            receiveWindow[i] = null;
+        }
+        pool.release(ackBuffer);
+    }
+
+    private void handleAck(long sequenceNumber) throws IOException {
+        if (sequenceNumber < sendBase || sequenceNumber >= nextSequenceNumber) {
+            return;
+        }
+        int acked = slot(sequenceNumber);
+        if (acknowledged[acked]) {
+            return;
+        }
+        long now = System.nanoTime();
+        acknowledged[acked] = true;
+        inFlight--;
+        if (transmissions[acked] == 1) {
+            retransmissionPolicy.onRttSample(now - sentAt[acked]);
+        } else {
+            retransmissionPolicy.onRetransmissionAcknowledged();
+        }
+        congestionController.onAck(now);
+        detectLosses(sequenceNumber, now);
+
+        while (sendBase < nextSequenceNumber && acknowledged[slot(sendBase)]) {
+            int slot = slot(sendBase);
+            pool.release(sendWindow[slot]);
+            sendWindow[slot] = null;
+            sendBase++;
+        }
+        fillWindow();
+    }
+
+    /**
+     * Counts the ACK of sequenceNumber against every older packet still unacknowledged, and fast
+     * retransmits the ones that reach the threshold, once each.
+     */
+    private void detectLosses(long sequenceNumber, long now) throws IOException {
+        for (long seq = sendBase; seq < sequenceNumber; seq++) {
+            int slot = slot(seq);
+            if (acknowledged[slot] || ++laterAcks[slot] != DUPLICATE_ACK_THRESHOLD) {
+                continue;
+            }
+            transmit(sendWindow[slot]);
+            sentAt[slot] = now;
+            transmissions[slot]++;
+            pushTimer(seq, now);
+            if (stats != null) {
+                stats.onFastRetransmission();
+            }
+            if (seq >= recoveryPoint) {
+                congestionController.onFastRetransmit(now);
+                recoveryPoint = nextSequenceNumber;
+            }
+        }
+    }
+
+    /**
+     * Drops stale timers from the head of the ring, and returns true if a live one is left there.
+     */
+    private boolean nextTimer() {
+        while (timerCount > 0) {
+            long seq = timerSequenceNumbers[timerHead];
+            if (seq >= sendBase && seq < nextSequenceNumber && !acknowledged[slot(seq)]
+                    && sentAt[slot(seq)] == timerSentAt[timerHead]) {
+                return true;
+            }
+            popTimer();
+        }
+        return false;
+    }
+
+    private void popTimer() {
+        timerHead = (timerHead + 1) % timerSentAt.length;
+        timerCount--;
+    }
+
+    /**
+     * Starts the timer of a packet just sent. The ring grows when stale timers pile up behind a live one.
+     */
+    private void pushTimer(long sequenceNumber, long sentAt) {
+        if (timerCount == timerSentAt.length) {
+            long[] sequenceNumbers = new long[2 * timerCount];
+            long[] sentAts = new long[2 * timerCount];
+            for (int i = 0; i < timerCount; i++) {
+                int from = (timerHead + i) % timerCount;
+                sequenceNumbers[i] = timerSequenceNumbers[from];
+                sentAts[i] = timerSentAt[from];
+            }
+            timerSequenceNumbers = sequenceNumbers;
+            timerSentAt = sentAts;
+            timerHead = 0;
+        }
+        int tail = (timerHead + timerCount) % timerSentAt.length;
+        timerSequenceNumbers[tail] = sequenceNumber;
+        timerSentAt[tail] = sentAt;
+        timerCount++;
+    }
+
+    private void handleData(PacketView packet) throws IOException {
+        long seq = unwrap(packet.getSequenceNumber(), receiveBase);
+        if (seq >= receiveBase + windowSize) {
+            // Beyond our window, the sender will retransmit once the window has moved.
+            return;
+        }
+        sendAck(seq);
+        if (stats != null) {
+            stats.onDataReceived(seq < receiveBase || receiveWindow[slot(seq)] != null);
+        }
+        if (seq < receiveBase) {
+            // Already delivered, the previous ACK was lost.
+            return;
+        }
+
+        int slot = slot(seq);
+        if (seq == receiveBase && receiveWindow[slot] == null && isReceiverReady()) {
+            // In order: consume it straight from the receive buffer.
+            receiveBase++;
+            deliver(packet);
+        } else if (receiveWindow[slot] == null) {
+            // Ahead of a missing packet, or held back until the receiver is ready.
+            ByteBuffer copy = pool.acquire();
+            packet.copyTo(copy);
+            copy.flip();
+            receiveWindow[slot] = copy;
+        }
+        deliverBuffered();
+    }
+
+    private boolean isReceiverReady() {
+        return receiver == null || receiver.isReady();
+    }
+
+    private void deliverBuffered() throws IOException {
+        while (receiveWindow[slot(receiveBase)] != null && isReceiverReady()) {
+            int slot = slot(receiveBase);
+            ByteBuffer segment = receiveWindow[slot];
+            receiveWindow[slot] = null;
+            receiveBase++;
+            deliver(bufferedView.wrap(segment));
+            pool.release(segment);
+        }
+    }
+
+    private void deliver(PacketView segment) throws IOException {
+        int length = segment.copyPayload(segmentBytes, 0);
+        boolean end = segment.getType() == Packet.FIN;
+        if (receiver != null) {
+            segmentBuffer.clear().limit(length);
+            receiver.onData(segmentBuffer);
+            if (end) {
+                receiver.onMessageEnd();
+            }
+            return;
+        }
+        currentMessage.write(segmentBytes, 0, length);
+        if (end) {
+            deliveredMessages.add(currentMessage.toByteArray());
+            currentMessage.reset();
+        }
+    }
+
+    private void fillWindow() throws IOException {
+        while (canCutSegment() && nextSequenceNumber < sendBase + windowSize
+                && inFlight < congestionController.congestionWindow()) {
+            ByteBuffer packet = nextSegment();
+            int slot = slot(nextSequenceNumber);
+            sendWindow[slot] = packet;
+            acknowledged[slot] = false;
+            transmissions[slot] = 1;
+            laterAcks[slot] = 0;
+            inFlight++;
+            transmit(packet);
+            if (stats != null) {
+                stats.onDataSent();
+            }
+            sentAt[slot] = System.nanoTime();
+            pushTimer(nextSequenceNumber, sentAt[slot]);
+            nextSequenceNumber++;
+        }
+    }
+
+    /**
+     * A segment is cut once a full payload is queued or the message has been ended, so that
+     * small writes are coalesced.
+     */
+    private boolean canCutSegment() {
+        return pendingBytes >= Packet.MAX_PAYLOAD || pendingMessageEnds > 0;
+    }
+
+    /**
+     * Encodes the next segment of pending data into a pooled buffer, ready to be sent.
+     */
+    private ByteBuffer nextSegment() {
+        ByteBuffer buf = pool.acquire();
+        Packet.writeHeader(buf, Packet.DATA, nextSequenceNumber, peerAddressBits, peerPort);
+
+        while (buf.hasRemaining() && pendingData.peek() != END_OF_MESSAGE) {
+            ByteBuffer data = pendingData.peek();
+            int length = Math.min(data.remaining(), buf.remaining());
+            int limit = data.limit();
+            data.limit(data.position() + length);
+            buf.put(data);
+            data.limit(limit);
+            pendingBytes -= length;
+            if (!data.hasRemaining()) {
+                pendingData.poll();
+            }
+        }
+        if (pendingData.peek() == END_OF_MESSAGE) {
+            pendingData.poll();
+            pendingMessageEnds--;
+            buf.put(0, (byte) Packet.FIN);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private void sendAck(long sequenceNumber) throws IOException {
+        ackBuffer.clear();
+        Packet.writeHeader(ackBuffer, Packet.ACK, sequenceNumber, peerAddressBits, peerPort);
+        ackBuffer.flip();
+        channel.send(ackBuffer, routerAddress);
+        if (stats != null) {
+            stats.onAckSent();
+        }
+    }
+
+    private void transmit(ByteBuffer packet) throws IOException {
+        channel.send(packet, routerAddress);
+        packet.rewind();
+    }
+
+    /**
+     * Sequence numbers are sent as their low 32 bits, see Packet.writeHeader. Returns the sequence
+     * number with the low bits wire that is closest to base, which is exact as long as the peer is
+     * less than 2^31 packets away, where a window keeps it.
+     */
+    static long unwrap(long wire, long base) {
+        return base + (int) (wire - base);
+    }
+
+    private int slot(long sequenceNumber) {
+        return (int) (sequenceNumber % windowSize);
+    }
+}
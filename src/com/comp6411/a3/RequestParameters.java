@@ -15,12 +15,40 @@ public class RequestParameters {
     public String url;
     public String file = "/";
     public  List<String> args = new ArrayList<>();
+    // Value of the Content-Length header, -1 if there was none.
+    public long contentLength = -1;
+    public String version;
+    // Whether the client keeps the connection open for more requests, from its version and Connection header.
+    public boolean keepAlive;
+    // Value of the X-Request-Id header, echoed in the response so pipelined responses can be matched.
+    public String requestId;
+
+    public RequestParameters(){
+    }
 
     public RequestParameters(String method, String path){
         this.method = method;
         this.path = path;
     }
 
+    /**
+     * Clears every field, so the object can be filled again by RequestParser for the next request.
+     */
+    public void reset(){
+        headers.clear();
+        postData = "";
+        host = null;
+        method = null;
+        path = null;
+        url = null;
+        file = "/";
+        args.clear();
+        contentLength = -1;
+        version = null;
+        keepAlive = false;
+        requestId = null;
+    }
+
     public void processMessage(String clientMessage){
         String[] messageParts = clientMessage.split("\r\n");
         List<String> messageList = new ArrayList<>(Arrays.asList(messageParts));
@@ -0,0 +1,243 @@
+package com.comp6411.a3;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * RequestParser reads an HTTP request straight from the received buffers in a single pass, one
+ * segment at a time, so a request may span any number of packets. It fills a RequestParameters
+ * that the caller can reuse from one request to the next.
+ * The head is parsed byte by byte, only the request line and the header lines are turned into
+ * Strings. The body is not copied: once the head is complete, bodySlice limits each buffer to the
+ * body bytes it holds, up to Content-Length, and the caller consumes them where it wants. Without
+ * Content-Length the body of a POST runs to the end of the message, see endOfMessage, and a GET
+ * has none. A bare CR inside a line is rejected, so header values never carry line breaks.
+ * Bytes following a complete request are left in the buffer for the next one.
+ * Not thread safe, one parser per connection.
+ */
+public class RequestParser {
+
+    public static final int MAX_LINE = 8 * 1024;
+    public static final int MAX_HEAD = 64 * 1024;
+
+    public enum State {
+        REQUEST_LINE, HEADERS, BODY, COMPLETE, ERROR
+    }
+
+    private static final byte[] GET = "GET".getBytes(ISO_8859_1);
+    private static final byte[] POST = "POST".getBytes(ISO_8859_1);
+    private static final String HOST = "Host:";
+    private static final String CONTENT_LENGTH = "Content-Length:";
+    private static final String CONNECTION = "Connection:";
+    private static final String REQUEST_ID = "X-Request-Id:";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength;
+    private int headLength;
+    private long bodyReceived;
+    private State state = State.REQUEST_LINE;
+    private String error;
+    private RequestParameters request;
+
+    /**
+     * Starts parsing a new request into request, which is reset first.
+     */
+    public void reset(RequestParameters request) {
+        request.reset();
+        this.request = request;
+        this.lineLength = 0;
+        this.headLength = 0;
+        this.bodyReceived = 0;
+        this.state = State.REQUEST_LINE;
+        this.error = null;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Why the request was rejected, when the state is ERROR.
+     */
+    public String getError() {
+        return error;
+    }
+
+    public RequestParameters getRequest() {
+        return request;
+    }
+
+    /**
+     * True once any byte of the current request has been seen.
+     */
+    public boolean isStarted() {
+        return headLength > 0;
+    }
+
+    public long getBodyReceived() {
+        return bodyReceived;
+    }
+
+    /**
+     * Consumes head bytes from data. Returns BODY as soon as the blank line ending the head is
+     * read, COMPLETE directly if there is no body to wait for, and ERROR for a malformed head.
+     */
+    public State parse(ByteBuffer data) {
+        while ((state == State.REQUEST_LINE || state == State.HEADERS) && data.hasRemaining()) {
+            byte b = data.get();
+            if (++headLength > MAX_HEAD) {
+                return fail("Request head larger than " + MAX_HEAD + " bytes");
+            }
+            if (b != '\n') {
+                if (lineLength == MAX_LINE) {
+                    return fail("Request line longer than " + MAX_LINE + " bytes");
+                }
+                line[lineLength++] = b;
+                continue;
+            }
+
+            // Lines end with CRLF, a bare LF is accepted too.
+            int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            lineLength = 0;
+            if (indexOf('\r', 0, length) >= 0) {
+                return fail("Bare CR in the request head");
+            }
+            if (state == State.REQUEST_LINE) {
+                if (length > 0) {
+                    parseRequestLine(length);
+                }
+            } else if (length == 0) {
+                boolean body = request.contentLength > 0
+                        || (request.contentLength < 0 && request.method.equals("POST"));
+                state = body ? State.BODY : State.COMPLETE;
+            } else {
+                parseHeader(length);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * In the BODY state, limits data to the body bytes it holds and counts them as received.
+     * Returns the original limit of data, to be restored once the caller has consumed them.
+     */
+    public int bodySlice(ByteBuffer data) {
+        int limit = data.limit();
+        if (state != State.BODY) {
+            data.limit(data.position());
+            return limit;
+        }
+        long available = data.remaining();
+        if (request.contentLength >= 0) {
+            available = Math.min(available, request.contentLength - bodyReceived);
+        }
+        data.limit(data.position() + (int) available);
+        bodyReceived += available;
+        if (bodyReceived == request.contentLength) {
+            state = State.COMPLETE;
+        }
+        return limit;
+    }
+
+    /**
+     * The transport says the message ended. A request without Content-Length is complete, and so
+     * is a head that never got its blank line. A body shorter than its Content-Length is an error.
+     */
+    public State endOfMessage() {
+        if (state == State.REQUEST_LINE && !isStarted()) {
+            return state;
+        }
+        if (state == State.REQUEST_LINE) {
+            return fail("Incomplete request line");
+        }
+        if (state == State.HEADERS || (state == State.BODY && request.contentLength < 0)) {
+            state = State.COMPLETE;
+        } else if (state == State.BODY) {
+            return fail("Body shorter than its Content-Length of " + request.contentLength);
+        }
+        return state;
+    }
+
+    private void parseRequestLine(int length) {
+        int firstSpace = indexOf(' ', 0, length);
+        int secondSpace = firstSpace < 0 ? -1 : indexOf(' ', firstSpace + 1, length);
+        if (secondSpace < 0) {
+            fail("Malformed request line");
+            return;
+        }
+        // The two methods we serve are common constants, no need to decode them.
+        if (regionEquals(GET, 0, firstSpace)) {
+            request.method = "GET";
+        } else if (regionEquals(POST, 0, firstSpace)) {
+            request.method = "POST";
+        } else {
+            fail("Unsupported method " + new String(line, 0, firstSpace, ISO_8859_1));
+            return;
+        }
+        request.path = new String(line, firstSpace + 1, secondSpace - firstSpace - 1, UTF_8);
+        request.processPath();
+        request.version = new String(line, secondSpace + 1, length - secondSpace - 1, ISO_8859_1);
+        // HTTP/1.1 connections stay open unless the client says otherwise, HTTP/1.0 ones close.
+        request.keepAlive = request.version.equals(HTTP_1_1);
+        state = State.HEADERS;
+    }
+
+    private void parseHeader(int length) {
+        String header = new String(line, 0, length, UTF_8);
+        request.headers.add(header);
+        if (header.regionMatches(true, 0, HOST, 0, HOST.length())) {
+            request.host = header.substring(HOST.length()).trim();
+            request.createURL();
+        } else if (header.regionMatches(true, 0, CONTENT_LENGTH, 0, CONTENT_LENGTH.length())) {
+            try {
+                request.contentLength = Long.parseLong(header.substring(CONTENT_LENGTH.length()).trim());
+            } catch (NumberFormatException e) {
+                fail("Invalid Content-Length");
+                return;
+            }
+            if (request.contentLength < 0) {
+                fail("Invalid Content-Length");
+            }
+        } else if (header.regionMatches(true, 0, CONNECTION, 0, CONNECTION.length())) {
+            String connection = header.substring(CONNECTION.length()).trim();
+            if (connection.equalsIgnoreCase("close")) {
+                request.keepAlive = false;
+            } else if (connection.equalsIgnoreCase("keep-alive")) {
+                request.keepAlive = true;
+            }
+        } else if (header.regionMatches(true, 0, REQUEST_ID, 0, REQUEST_ID.length())) {
+            request.requestId = header.substring(REQUEST_ID.length()).trim();
+        }
+    }
+
+    private State fail(String error) {
+        this.error = error;
+        this.state = State.ERROR;
+        return state;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionEquals(byte[] token, int from, int to) {
+        if (to - from != token.length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            // ASCII letters only, so clearing bit 0x20 upper cases them.
+            if ((line[from + i] & 0xDF) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
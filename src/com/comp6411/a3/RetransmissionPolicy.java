@@ -0,0 +1,31 @@
+package com.comp6411.a3;
+
+/**
+ * RetransmissionPolicy decides how long a sender waits for an acknowledgement before sending a
+ * packet again. One instance belongs to one connection and is shared by its handshake and data
+ * paths.
+ */
+public interface RetransmissionPolicy {
+
+    /**
+     * Current retransmission timeout in nanoseconds.
+     */
+    long timeoutNanos();
+
+    /**
+     * Feeds a round trip time measured on a packet that was transmitted only once. Samples from
+     * retransmitted packets are ambiguous and must not be reported (Karn's rule).
+     */
+    void onRttSample(long rttNanos);
+
+    /**
+     * Called when a retransmission timer fired and the packet had to be sent again.
+     */
+    void onTimeout();
+
+    /**
+     * Called when a retransmitted packet is acknowledged. It gives no RTT sample, but it shows the
+     * path delivers again, so a backed off timeout can be restored.
+     */
+    void onRetransmissionAcknowledged();
+}
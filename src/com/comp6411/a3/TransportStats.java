@@ -0,0 +1,152 @@
+package com.comp6411.a3;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TransportStats counts the packets of every ReliableConnection given it, see
+ * ReliableConnection.setStats, e.g. all the connections of a server or of a client, and the time
+ * their handshakes took.
+ * The counters are LongAdders, so connections driven from several threads update them without
+ * contending, and reading them is only approximate while they are updated.
+ */
+public class TransportStats implements TransportStatsMXBean {
+
+    private final LongAdder dataSent = new LongAdder();
+    private final LongAdder timeoutRetransmissions = new LongAdder();
+    private final LongAdder fastRetransmissions = new LongAdder();
+    private final LongAdder dataReceived = new LongAdder();
+    private final LongAdder duplicatesReceived = new LongAdder();
+    private final LongAdder acksSent = new LongAdder();
+    private final LongAdder acksReceived = new LongAdder();
+    private final LongAdder packetErrors = new LongAdder();
+    private final LongAdder loopErrors = new LongAdder();
+    private final LatencyHistogram handshakeLatency = new LatencyHistogram();
+
+    void onDataSent() {
+        dataSent.increment();
+    }
+
+    void onTimeoutRetransmission() {
+        timeoutRetransmissions.increment();
+    }
+
+    void onFastRetransmission() {
+        fastRetransmissions.increment();
+    }
+
+    void onDataReceived(boolean duplicate) {
+        dataReceived.increment();
+        if (duplicate) {
+            duplicatesReceived.increment();
+        }
+    }
+
+    void onAckSent() {
+        acksSent.increment();
+    }
+
+    void onAckReceived() {
+        acksReceived.increment();
+    }
+
+    /**
+     * Counts a datagram that could not be handled, e.g. one too short to be a packet.
+     */
+    public void onPacketError() {
+        packetErrors.increment();
+    }
+
+    /**
+     * Counts an iteration of a receive loop that failed and was skipped, e.g. on a bug in a task.
+     */
+    public void onLoopError() {
+        loopErrors.increment();
+    }
+
+    /**
+     * Records a completed handshake, nanos after its first SYN was sent or received.
+     */
+    public void onHandshake(long nanos) {
+        handshakeLatency.record(nanos);
+    }
+
+    /**
+     * DATA and FIN packets sent for the first time.
+     */
+    @Override
+    public long getDataSent() {
+        return dataSent.sum();
+    }
+
+    /**
+     * Packets sent again because their retransmission timer expired.
+     */
+    @Override
+    public long getTimeoutRetransmissions() {
+        return timeoutRetransmissions.sum();
+    }
+
+    /**
+     * Packets sent again after DUPLICATE_ACK_THRESHOLD later packets were acknowledged.
+     */
+    @Override
+    public long getFastRetransmissions() {
+        return fastRetransmissions.sum();
+    }
+
+    @Override
+    public long getRetransmissions() {
+        return getTimeoutRetransmissions() + getFastRetransmissions();
+    }
+
+    /**
+     * DATA and FIN packets received, duplicates included.
+     */
+    @Override
+    public long getDataReceived() {
+        return dataReceived.sum();
+    }
+
+    /**
+     * Packets received that were already delivered or buffered.
+     */
+    @Override
+    public long getDuplicatesReceived() {
+        return duplicatesReceived.sum();
+    }
+
+    @Override
+    public long getAcksSent() {
+        return acksSent.sum();
+    }
+
+    @Override
+    public long getAcksReceived() {
+        return acksReceived.sum();
+    }
+
+    @Override
+    public long getPacketErrors() {
+        return packetErrors.sum();
+    }
+
+    @Override
+    public long getLoopErrors() {
+        return loopErrors.sum();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getHandshakeLatency() {
+        return handshakeLatency.snapshot();
+    }
+
+    @Override
+    public String toString() {
+        return "sent " + getDataSent() + " packets, retransmitted " + getRetransmissions() + " ("
+                + getTimeoutRetransmissions() + " on timeout, " + getFastRetransmissions() + " fast), received "
+                + getDataReceived() + " (" + getDuplicatesReceived() + " duplicates), acks " + getAcksSent()
+                + " sent " + getAcksReceived() + " received, " + getPacketErrors() + " packet errors, "
+                + getLoopErrors() + " loop errors, "
+                + handshakeLatency.getCount() + " handshakes " + handshakeLatency.summary();
+    }
+}
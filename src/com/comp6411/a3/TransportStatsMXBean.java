@@ -0,0 +1,38 @@
+package com.comp6411.a3;
+
+/**
+ * The counters of a TransportStats as seen through JMX, see Metrics.register.
+ */
+public interface TransportStatsMXBean {
+
+    long getDataSent();
+
+    long getTimeoutRetransmissions();
+
+    long getFastRetransmissions();
+
+    long getRetransmissions();
+
+    long getDataReceived();
+
+    long getDuplicatesReceived();
+
+    long getAcksSent();
+
+    long getAcksReceived();
+
+    /**
+     * Datagrams dropped because they could not be handled.
+     */
+    long getPacketErrors();
+
+    /**
+     * Iterations of a server receive loop skipped because they failed unexpectedly.
+     */
+    long getLoopErrors();
+
+    /**
+     * Time from the first SYN to the handshake completing, in nanoseconds.
+     */
+    LatencyHistogram.Snapshot getHandshakeLatency();
+}
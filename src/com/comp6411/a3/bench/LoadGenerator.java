@@ -0,0 +1,295 @@
+package com.comp6411.a3.bench;
+
+import com.comp6411.a3.LatencyHistogram;
+import com.comp6411.a3.TransportStats;
+import com.comp6411.a3.client.HttpcClient;
+import com.comp6411.a3.client.Request;
+import com.comp6411.a3.client.Response;
+import com.comp6411.a3.ftpserver.HTTPFS;
+import com.comp6411.a3.router.DelayDistribution;
+import com.comp6411.a3.router.Router;
+import com.comp6411.a3.router.RouterDriver;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * LoadGenerator measures HTTPFS end to end on loopback. It starts an HTTPFS on a temporary
+ * directory, a Router in front of it with the given loss and delay, and N clients, each an
+ * HttpcClient with its own channel and so its own connection, then sends a mix of GET and POST
+ * requests at a fixed rate and reports the requests per second, the goodput, the retransmissions
+ * on both sides and the latency percentiles.
+ * The load is open loop: request i is due at start + i / rate whatever happened to the previous
+ * ones, and its latency counts from that due time, so a stalled server shows up in the percentiles
+ * instead of silently lowering the rate.
+ * Usage: java com.comp6411.a3.bench.LoadGenerator [--name=value...], e.g.
+ *   java com.comp6411.a3.bench.LoadGenerator --rate=1000 --duration=20s --clients=8 --drop-rate=0.05
+ * Options:
+ *   --clients=N          concurrent clients, default 4
+ *   --rate=N             requests per second, over all clients, default 500
+ *   --duration=TIME      how long the load runs, default 10s
+ *   --post-ratio=R       share of POST requests, default 0.2
+ *   --files=N            files served to GET, default 50
+ *   --file-size=BYTES    size of each of them, default 4096
+ *   --post-size=BYTES    body of each POST, default 1024
+ *   --drop-rate, --duplicate-rate, --reorder-rate, --min-delay, --max-delay, --delay-distribution
+ *                        configure the router as RouterDriver does
+ *   --seed=N             seed of the workload and of the router
+ */
+public class LoadGenerator {
+
+    private int clients = 4;
+    private double rate = 500;
+    private long duration = 10000;
+    private double postRatio = 0.2;
+    private int files = 50;
+    private int fileSize = 4096;
+    private int postSize = 1024;
+    private long seed = System.nanoTime();
+    private final Router.Builder router = Router.builder().setPort(0);
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LatencyHistogram getLatencies = new LatencyHistogram();
+    private final LatencyHistogram postLatencies = new LatencyHistogram();
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicLong goodput = new AtomicLong();
+    private final TransportStats clientStats = new TransportStats();
+    private final TransportStats serverStats = new TransportStats();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.configure(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid argument. " + e.getMessage());
+            return;
+        }
+        generator.run();
+    }
+
+    private void configure(String[] args) {
+        String distribution = "uniform";
+        long minDelay = 0;
+        long maxDelay = 0;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+            String name = arg.substring(2, split).toLowerCase();
+            String value = arg.substring(split + 1);
+            switch (name) {
+                case "clients":
+                    clients = Integer.parseInt(value);
+                    break;
+                case "rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "duration":
+                    duration = RouterDriver.parseMillis(value);
+                    break;
+                case "post-ratio":
+                    postRatio = Double.parseDouble(value);
+                    break;
+                case "files":
+                    files = Integer.parseInt(value);
+                    break;
+                case "file-size":
+                    fileSize = Integer.parseInt(value);
+                    break;
+                case "post-size":
+                    postSize = Integer.parseInt(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "drop-rate":
+                    router.setDropRate(Double.parseDouble(value));
+                    break;
+                case "duplicate-rate":
+                    router.setDuplicateRate(Double.parseDouble(value));
+                    break;
+                case "reorder-rate":
+                    router.setReorderRate(Double.parseDouble(value));
+                    break;
+                case "min-delay":
+                    minDelay = RouterDriver.parseMillis(value);
+                    break;
+                case "max-delay":
+                    maxDelay = RouterDriver.parseMillis(value);
+                    break;
+                case "delay-distribution":
+                    distribution = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        if (clients < 1 || rate <= 0 || duration <= 0 || files < 1 || postRatio < 0 || postRatio > 1) {
+            throw new IllegalArgumentException("Clients, rate, duration and files must be positive, "
+                    + "and the POST ratio between 0 and 1");
+        }
+        router.setDelay(DelayDistribution.forName(distribution, minDelay, maxDelay)).setSeed(seed);
+    }
+
+    private void run() throws Exception {
+        Path directory = Files.createTempDirectory("httpfs-load");
+        ExecutorService serverWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "httpfs-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        List<HttpcClient> httpcs = new ArrayList<>();
+        try (Router forwarder = router.create().start()) {
+            int serverPort = freePort();
+            startServer(directory, serverPort, serverWorkers);
+            InetSocketAddress routerAddress = new InetSocketAddress("localhost", forwarder.getLocalAddress().getPort());
+            for (int i = 0; i < clients; i++) {
+                httpcs.add(new HttpcClient.Builder().setRouterAddress(routerAddress)
+                        .setTransportStats(clientStats).create());
+            }
+            String base = "http://localhost:" + serverPort + "/";
+
+            // One request per client before timing anything: the server is up and every handshake done.
+            List<CompletableFuture<Response>> warmup = new ArrayList<>();
+            for (HttpcClient client : httpcs) {
+                warmup.add(client.send(Request.get(base).create()));
+            }
+            for (CompletableFuture<Response> response : warmup) {
+                response.get(30, TimeUnit.SECONDS);
+            }
+
+            System.out.println(String.format(Locale.ROOT, "Sending %.0f requests/s for %.1f s from %d clients, "
+                    + "%.0f%% POST, router %s", rate, duration / 1000.0, clients, postRatio * 100, forwarder));
+            long start = System.nanoTime();
+            List<CompletableFuture<?>> responses = drive(httpcs, base, start);
+            long sent = responses.size();
+            try {
+                CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0])).get(2, TimeUnit.MINUTES);
+            } catch (TimeoutException e) {
+                System.out.println("Some responses did not arrive within 2 minutes of the end of the load.");
+            }
+            long elapsed = System.nanoTime() - start;
+            report(sent, elapsed, forwarder);
+        } finally {
+            for (HttpcClient client : httpcs) {
+                client.close();
+            }
+            serverWorkers.shutdownNow();
+            delete(directory);
+        }
+    }
+
+    /**
+     * Sends every request at its due time, from the calling thread, and returns their futures.
+     */
+    private List<CompletableFuture<?>> drive(List<HttpcClient> httpcs, String base, long start) throws Exception {
+        Random random = new Random(seed);
+        byte[] body = new byte[postSize];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) ('a' + random.nextInt(26));
+        }
+        Request[] gets = new Request[files];
+        for (int i = 0; i < files; i++) {
+            gets[i] = Request.get(base + "file" + i + ".txt").create();
+        }
+        Request[] posts = new Request[files];
+        for (int i = 0; i < files; i++) {
+            posts[i] = Request.post(base + "upload" + i + ".txt", body).create();
+        }
+
+        long total = (long) (rate * duration / 1000);
+        double intervalNanos = 1e9 / rate;
+        List<CompletableFuture<?>> responses = new ArrayList<>((int) Math.min(total, Integer.MAX_VALUE));
+        for (long i = 0; i < total; i++) {
+            long due = start + (long) (i * intervalNanos);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean post = random.nextDouble() < postRatio;
+            Request request = post ? posts[random.nextInt(files)] : gets[random.nextInt(files)];
+            HttpcClient client = httpcs.get((int) (i % httpcs.size()));
+            responses.add(client.send(request).whenComplete((response, e) -> {
+                if (e != null) {
+                    failed.increment();
+                    return;
+                }
+                long latency = System.nanoTime() - due;
+                latencies.record(latency);
+                (post ? postLatencies : getLatencies).record(latency);
+                statusCodes.computeIfAbsent(response.getStatusCode(), code -> new LongAdder()).increment();
+                goodput.addAndGet(request.getBodyLength() + response.getBody().length);
+            }));
+        }
+        return responses;
+    }
+
+    private void report(long sent, long elapsed, Router forwarder) {
+        double seconds = elapsed / 1e9;
+        long completed = latencies.getCount();
+        System.out.println(String.format(Locale.ROOT, "%d requests sent, %d completed, %d failed in %.2f s, "
+                + "status codes %s", sent, completed, failed.sum(), seconds, statusCodes));
+        System.out.println(String.format(Locale.ROOT, "Throughput %.1f requests/s, goodput %.1f KB/s",
+                completed / seconds, goodput.get() / 1024.0 / seconds));
+        System.out.println("Latency      " + latencies.summary());
+        System.out.println("  GET        " + getLatencies.summary());
+        System.out.println("  POST       " + postLatencies.summary());
+        System.out.println("Client       " + clientStats);
+        System.out.println("Server       " + serverStats);
+        System.out.println("Router       received " + forwarder.getReceived() + ", forwarded " + forwarder.getForwarded()
+                + ", dropped " + forwarder.getDropped() + ", duplicated " + forwarder.getDuplicated()
+                + ", reordered " + forwarder.getReordered());
+    }
+
+    private void startServer(Path directory, int port, ExecutorService workers) throws IOException {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < fileSize) {
+            content.append("The quick brown fox jumps over the lazy dog.\n");
+        }
+        byte[] bytes = content.substring(0, fileSize).getBytes();
+        for (int i = 0; i < files; i++) {
+            Files.write(directory.resolve("file" + i + ".txt"), bytes);
+        }
+
+        HTTPFS httpfs = new HTTPFS();
+        httpfs.setExecutor(workers);
+        httpfs.setTransportStats(serverStats);
+        Thread thread = new Thread(() -> httpfs.createServer(port, false, directory + "/"), "httpfs");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static int freePort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.comp6411.a3.client;
+
+import com.comp6411.a3.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BulkTransfer runs a list of requests concurrently through an HttpcClient, one event loop and so
+ * one session per server for each of the sessions asked for, and reports the throughput and the
+ * latency percentiles of the whole run.
+ * At most sessions * WINDOW requests are outstanding at once, so the request timeout of the last
+ * request of a long manifest does not run out while it waits behind the others.
+ * Response bodies are written to the output directory by a single writer thread, keeping the
+ * disk off the loop threads.
+ */
+class BulkTransfer {
+    // Outstanding requests per session.
+    static final int WINDOW = 16;
+
+    /**
+     * One request of the run and the name of the file its response body is written to.
+     */
+    static class Job {
+        final Request request;
+        final String output;
+
+        Job(Request request, String output){
+            this.request = request;
+            this.output = output;
+        }
+    }
+
+    private final HttpcClient.Builder clientBuilder;
+    private final int sessions;
+    private final Path outputDirectory;
+    private final boolean isVerbose;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param outputDirectory where response bodies are written, or null to drop them.
+     */
+    BulkTransfer(HttpcClient.Builder clientBuilder, int sessions, Path outputDirectory, boolean isVerbose){
+        this.clientBuilder = clientBuilder;
+        this.sessions = sessions;
+        this.outputDirectory = outputDirectory;
+        this.isVerbose = isVerbose;
+    }
+
+    /**
+     * A GET for every URL of the manifest, one per line. Blank lines and lines starting with #
+     * are skipped.
+     */
+    static List<Job> getJobs(Path manifest, List<String> headers) throws IOException{
+        List<Job> jobs = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for(String line: Files.readAllLines(manifest, StandardCharsets.UTF_8)){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            Request.Builder builder = Request.get(line);
+            headers.forEach(builder::addHeader);
+            Request request = builder.create();
+            jobs.add(new Job(request, outputName(request.getUrl(), jobs.size(), names)));
+        }
+        return jobs;
+    }
+
+    /**
+     * A POST of every regular file under directory whose path, relative to directory, matches
+     * glob, to target followed by the file's name. The files are mapped, not read.
+     */
+    static List<Job> postJobs(Path directory, String glob, URL target, List<String> headers) throws IOException{
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        List<Path> files;
+        try(Stream<Path> paths = Files.walk(directory)){
+            files = paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(directory.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        String base = target.toString().endsWith("/") ? target.toString() : target + "/";
+        List<Job> jobs = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for(Path file: files){
+            String name = file.getFileName().toString();
+            Request.Builder builder = new Request.Builder().setMethod("POST").setUrl(base + name);
+            headers.forEach(builder::addHeader);
+            try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+                builder.setBody(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            Request request = builder.create();
+            jobs.add(new Job(request, outputName(request.getUrl(), jobs.size(), names)));
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs every job, waits for the last response and prints the summary.
+     */
+    void run(List<Job> jobs) throws IOException{
+        if(outputDirectory != null){
+            Files.createDirectories(outputDirectory);
+        }
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        Semaphore window = new Semaphore(sessions * WINDOW);
+        List<CompletableFuture<?>> done = new ArrayList<>(jobs.size());
+        long start = System.nanoTime();
+        try(HttpcClient client = clientBuilder.setEventLoops(sessions).create()){
+            for(Job job: jobs){
+                window.acquireUninterruptibly();
+                long sentAt = System.nanoTime();
+                CompletableFuture<Response> response = client.send(job.request);
+                // Timed on the loop thread, before the response waits for the writer.
+                response.whenComplete((r, e) -> {
+                    window.release();
+                    if(e == null){
+                        latencies.record(System.nanoTime() - sentAt);
+                    }
+                });
+                done.add(response.handleAsync((r, e) -> finish(job, r, e), writer));
+            }
+            CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            writer.shutdown();
+        }
+        printSummary(jobs.size(), System.nanoTime() - start);
+    }
+
+    private Void finish(Job job, Response response, Throwable failure){
+        if(failure != null){
+            failures.incrementAndGet();
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            System.out.println("Failed " + job.request + ": " + cause.getMessage());
+            return null;
+        }
+        bytesSent.addAndGet(job.request.getBodyLength());
+        bytesReceived.addAndGet(response.getBody().length);
+        if(isVerbose){
+            System.out.println(response.getStatusCode() + " " + response.getReason() + " " + job.request
+                    + " (" + response.getBody().length + " bytes)");
+        }
+        if(outputDirectory != null){
+            try{
+                Files.write(outputDirectory.resolve(job.output), response.getBody());
+            } catch (IOException e){
+                System.out.println("Error writing " + job.output + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private void printSummary(int requests, long elapsed){
+        double seconds = elapsed / 1e9;
+        long bytes = bytesSent.get() + bytesReceived.get();
+        System.out.println(String.format("%d requests, %d failed, in %.2f s: %.1f requests/s, %.1f KB/s "
+                        + "(%d bytes sent, %d received) over %d sessions",
+                requests, failures.get(), seconds, requests / seconds, bytes / 1024.0 / seconds,
+                bytesSent.get(), bytesReceived.get(), sessions));
+        System.out.println("Latency: " + latencies.summary());
+    }
+
+    /**
+     * The last segment of the URL's path, made unique by prefixing the job's index.
+     */
+    private static String outputName(URL url, int index, Set<String> names){
+        String path = url.getPath();
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if(name.isEmpty()){
+            name = "index";
+        }
+        if(!names.add(name)){
+            name = index + "_" + name;
+            names.add(name);
+        }
+        return name;
+    }
+}
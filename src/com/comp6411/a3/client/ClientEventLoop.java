@@ -0,0 +1,196 @@
+package com.comp6411.a3.client;
+
+import com.comp6411.a3.Log;
+import com.comp6411.a3.PacketBufferPool;
+import com.comp6411.a3.PacketView;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.channels.SelectionKey.OP_READ;
+
+/**
+ * ClientEventLoop owns one DatagramChannel and the one Selector it is registered with, for as long
+ * as the channel is open. Received packets are dispatched to the Handler registered for their peer,
+ * and the retransmission timers of every handler are driven from the same select call, so the client
+ * never opens a selector per attempt or per packet.
+ * A handler throwing only fails that handler, see Handler.failed, the loop and the other handlers
+ * carry on.
+ * The loop is not thread safe, it runs on the thread calling runUntil. Other threads may only call
+ * wakeup, to have it check its done condition again.
+ */
+public class ClientEventLoop implements Closeable {
+    // Longest select when no handler has a timer pending.
+    private static final long IDLE_POLL_INTERVAL = 1000;
+    // Stray datagrams may arrive at the packet rate, only some of them are logged.
+    private static final Log.Sampler DROPPED_SAMPLER = new Log.Sampler(100);
+
+    /**
+     * One peer driven by the loop.
+     */
+    interface Handler {
+        void handle(PacketView packet) throws IOException;
+
+        /**
+         * Milliseconds until the handler's next timer fires, or -1 if none is pending.
+         */
+        long nextTimeoutMillis();
+
+        /**
+         * Called on every turn of the loop to fire the timers that have expired.
+         */
+        void retransmitExpired() throws IOException;
+
+        /**
+         * Called when handle or retransmitExpired threw, the handler should give up its connection.
+         */
+        void failed(Exception e);
+    }
+
+    private final SocketAddress routerAddress;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final boolean debug;
+    private final Map<Long, Handler> handlers = new HashMap<>();
+    private final List<Handler> serviced = new ArrayList<>();
+    private final PacketView packet = new PacketView();
+    private final ByteBuffer buf = PacketBufferPool.shared().acquire();
+    // Started from the clock so that a restarted client on a reused port still counts upwards.
+    private long nextConnectionId = System.currentTimeMillis() & 0xFFFFFFFFL;
+
+    public ClientEventLoop(SocketAddress routerAddress, boolean debug) throws IOException{
+        this.routerAddress = routerAddress;
+        this.debug = debug;
+        this.channel = DatagramChannel.open();
+        this.selector = Selector.open();
+        channel.configureBlocking(false);
+        channel.register(selector, OP_READ);
+    }
+
+    public DatagramChannel getChannel(){
+        return channel;
+    }
+
+    public SocketAddress getRouterAddress(){
+        return routerAddress;
+    }
+
+    void register(long peerKey, Handler handler){
+        handlers.put(peerKey, handler);
+    }
+
+    void unregister(long peerKey){
+        handlers.remove(peerKey);
+    }
+
+    /**
+     * Returns a new id for a session's SYN. Every session of the loop shares its local port, the
+     * server tells a new session from a retransmitted SYN of the previous one by this id.
+     */
+    long nextConnectionId(){
+        long id = nextConnectionId;
+        nextConnectionId = (nextConnectionId + 1) & 0xFFFFFFFFL;
+        return id;
+    }
+
+    /**
+     * Receives packets and fires timers on the calling thread until done returns true, or until
+     * the deadline (a System.nanoTime value) passes.
+     * @return true if done, false if the deadline passed first.
+     */
+    public boolean runUntil(BooleanSupplier done, long deadline) throws IOException{
+        while(!done.getAsBoolean()){
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0){
+                return false;
+            }
+            selector.select(Math.min(nextTimeout(), Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining))));
+            selector.selectedKeys().clear();
+            receiveAll();
+
+            // Handlers may unregister themselves while their timers fire.
+            serviced.addAll(handlers.values());
+            try{
+                for(Handler handler: serviced){
+                    try{
+                        handler.retransmitExpired();
+                    } catch (IOException | RuntimeException e){
+                        handler.failed(e);
+                    }
+                }
+            } finally {
+                serviced.clear();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes the select of runUntil return at once, so that work queued by another thread is
+     * seen by its done condition. Safe to call from any thread.
+     */
+    public void wakeup(){
+        selector.wakeup();
+    }
+
+    private void receiveAll() throws IOException{
+        while(true){
+            buf.clear();
+            if(channel.receive(buf) == null){
+                return;
+            }
+            buf.flip();
+            try{
+                packet.wrap(buf);
+            } catch (IOException e){
+                if(debug){
+                    Log.log(Log.Level.INFO, DROPPED_SAMPLER, () -> "Dropping malformed packet: " + e.getMessage());
+                }
+                continue;
+            }
+            Handler handler = handlers.get(packet.getPeerKey());
+            if(handler != null){
+                try{
+                    handler.handle(packet);
+                } catch (IOException | RuntimeException e){
+                    handler.failed(e);
+                }
+            } else if(debug){
+                // The view is reused for the next datagram, so describe it now.
+                String dropped = packet.toString();
+                Log.log(Log.Level.INFO, DROPPED_SAMPLER, () -> "Dropping packet from unknown peer " + dropped);
+            }
+        }
+    }
+
+    private long nextTimeout(){
+        long wait = IDLE_POLL_INTERVAL;
+        for(Handler handler: handlers.values()){
+            long next = handler.nextTimeoutMillis();
+            if(next >= 0){
+                wait = Math.min(wait, next);
+            }
+        }
+        return wait;
+    }
+
+    @Override
+    public void close() throws IOException{
+        try{
+            selector.close();
+            channel.close();
+        } finally {
+            PacketBufferPool.shared().release(buf);
+        }
+    }
+}
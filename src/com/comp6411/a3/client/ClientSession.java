@@ -0,0 +1,324 @@
+package com.comp6411.a3.client;
+
+import com.comp6411.a3.CongestionController;
+import com.comp6411.a3.ConnectionFailedException;
+import com.comp6411.a3.Packet;
+import com.comp6411.a3.PacketBufferPool;
+import com.comp6411.a3.PacketView;
+import com.comp6411.a3.ReliableConnection;
+import com.comp6411.a3.RetransmissionPolicy;
+import com.comp6411.a3.TransportStats;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClientSession is the client end of one connection to the server, driven by a ClientEventLoop.
+ * It retransmits its SYN on the loop's timers until the SYN_ACK arrives, then hands every packet
+ * to a ReliableConnection carrying the request and the response.
+ * Retries are bounded: the SYN and every DATA packet are sent at most maxAttempts times, and
+ * connect and exchange give up at their deadline. Either way the caller gets a
+ * ConnectionFailedException saying what went wrong, and the session is unusable afterwards.
+ * When the server keeps the connection alive, the session carries any number of requests one
+ * after the other, see ConnectionPool.
+ */
+class ClientSession implements ClientEventLoop.Handler {
+    static final long DEFAULT_CONNECT_TIMEOUT = 30000;
+    static final long DEFAULT_REQUEST_TIMEOUT = 120000;
+
+    private final ClientEventLoop loop;
+    private final InetSocketAddress serverAddress;
+    private final long peerKey;
+    private final RetransmissionPolicy policy;
+    private final ReliableConnection connection;
+    private final int maxAttempts;
+    private boolean isVerbose;
+    private TransportStats stats;
+
+    private final long connectionId;
+    private final ByteBuffer syn;
+    private long firstSynSentAt;
+    private long synSentAt;
+    private int synTransmissions;
+    private boolean established;
+    private long lastRequestId;
+    private ConnectionFailedException failure;
+    private boolean closed;
+
+    ClientSession(ClientEventLoop loop, InetSocketAddress serverAddress, int windowSize,
+                  RetransmissionPolicy policy, CongestionController congestionController, int maxAttempts,
+                  boolean isVerbose){
+        this.loop = loop;
+        this.serverAddress = serverAddress;
+        this.policy = policy;
+        this.maxAttempts = maxAttempts;
+        this.isVerbose = isVerbose;
+        int addressBits = Packet.addressBits(serverAddress.getAddress());
+        this.peerKey = PacketView.peerKey(addressBits, serverAddress.getPort());
+        this.connection = new ReliableConnection(loop.getChannel(), loop.getRouterAddress(),
+                serverAddress.getAddress(), serverAddress.getPort(), windowSize, policy, congestionController);
+        connection.setMaxTransmissions(maxAttempts);
+
+        // The SYN carries the connection id as its sequence number, and an empty payload.
+        this.connectionId = loop.nextConnectionId();
+        this.syn = PacketBufferPool.shared().acquire();
+        Packet.writeHeader(syn, Packet.SYN, connectionId, addressBits, serverAddress.getPort());
+        syn.flip();
+    }
+
+    /**
+     * Sends the SYN and runs the loop until the server answers with a SYN_ACK, for at most
+     * timeout milliseconds.
+     */
+    void connect(long timeout) throws IOException{
+        open();
+        boolean done = loop.runUntil(() -> established || failure != null, deadline(timeout));
+        checkFailure(done, "Handshake with " + serverAddress + " timed out after " + timeout + " ms");
+    }
+
+    /**
+     * Sends the request over the established connection and runs the loop until the whole
+     * response has been received, for at most timeout milliseconds.
+     */
+    byte[] exchange(byte[] request, long timeout) throws IOException{
+        return exchange(new ByteBuffer[]{ByteBuffer.wrap(request)}, timeout);
+    }
+
+    /**
+     * Same as exchange(byte[], long) for a request made of several buffers, sent one after the
+     * other as a single message, e.g. the head and a mapped file.
+     */
+    byte[] exchange(ByteBuffer[] request, long timeout) throws IOException{
+        return pipeline(Collections.singletonList(request), timeout).get(0);
+    }
+
+    /**
+     * Sends the requests back to back, each as its own message, without waiting for their
+     * responses, and runs the loop until one response per request has been received, for at most
+     * timeout milliseconds. The responses are returned in the order they arrived, which a server
+     * keeping the connection alive sends in request order.
+     */
+    List<byte[]> pipeline(List<ByteBuffer[]> requests, long timeout) throws IOException{
+        for(ByteBuffer[] request: requests){
+            send(request);
+        }
+        List<byte[]> responses = new ArrayList<>(requests.size());
+        boolean done = loop.runUntil(() -> {
+            byte[] response;
+            while((response = nextResponse()) != null){
+                responses.add(response);
+            }
+            return failure != null || responses.size() >= requests.size();
+        }, deadline(timeout));
+        checkFailure(done, "Received " + responses.size() + " of " + requests.size() + " responses from "
+                + serverAddress + " within " + timeout + " ms");
+        if(isVerbose){
+            if(connection.hasUnacknowledged()){
+                System.out.println("Response received before the request was acknowledged.");
+            }
+            System.out.println("Retransmission timer: " + policy);
+        }
+        return responses;
+    }
+
+    /**
+     * Registers the session with the loop and sends the SYN, without waiting for the SYN_ACK.
+     * The loop retransmits it until isEstablished or getFailure says how the handshake ended.
+     */
+    void open() throws IOException{
+        loop.register(peerKey, this);
+        sendSyn();
+    }
+
+    /**
+     * Queues a request on the established connection, without waiting for its response.
+     */
+    void send(ByteBuffer[] request) throws IOException{
+        checkFailure(true, null);
+        for(ByteBuffer part: request){
+            connection.write(part);
+        }
+        connection.endMessage();
+    }
+
+    /**
+     * Returns the next complete response received, or null if there is none yet.
+     */
+    byte[] nextResponse(){
+        return connection.nextMessage();
+    }
+
+    boolean isEstablished(){
+        return established;
+    }
+
+    /**
+     * Why the session failed, or null.
+     */
+    ConnectionFailedException getFailure(){
+        return failure;
+    }
+
+    /**
+     * Marks the session as failed, e.g. when a deadline of its caller passed. The first failure is kept.
+     */
+    void fail(ConnectionFailedException e){
+        if(failure == null){
+            failure = e;
+        }
+    }
+
+    /**
+     * A new X-Request-Id, unique on this session.
+     */
+    long nextRequestId(){
+        return ++lastRequestId;
+    }
+
+    @Override
+    public void handle(PacketView packet) throws IOException{
+        if(packet.getType() == Packet.SYN_ACK){
+            if(packet.getSequenceNumber() != connectionId){
+                // Answer to the SYN of an earlier session on this port.
+                return;
+            }
+            if(!established){
+                established = true;
+                // Karn's rule: only a SYN sent once gives an unambiguous RTT sample.
+                if(synTransmissions == 1){
+                    policy.onRttSample(System.nanoTime() - synSentAt);
+                }
+                if(stats != null){
+                    stats.onHandshake(System.nanoTime() - firstSynSentAt);
+                }
+                if(isVerbose){
+                    System.out.println("SYN_ACK received from server, " + policy);
+                }
+            }
+            // Complete the handshake, again for a duplicate SYN_ACK. If this ACK is lost, the first
+            // DATA packet completes it.
+            sendHandshakeAck();
+            return;
+        }
+        if(established){
+            connection.handle(packet);
+        }
+    }
+
+    @Override
+    public void failed(Exception e){
+        fail(new ConnectionFailedException("Connection to " + serverAddress + " failed: " + e, e));
+    }
+
+    @Override
+    public long nextTimeoutMillis(){
+        if(failure != null){
+            return -1;
+        }
+        if(established){
+            return connection.nextTimeoutMillis();
+        }
+        long wait = synSentAt + policy.timeoutNanos() - System.nanoTime();
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+    }
+
+    @Override
+    public void retransmitExpired() throws IOException{
+        if(failure != null){
+            return;
+        }
+        if(established){
+            try{
+                connection.retransmitExpired();
+            } catch (ConnectionFailedException e){
+                failure = e;
+            }
+            return;
+        }
+        if(System.nanoTime() - synSentAt >= policy.timeoutNanos()){
+            if(synTransmissions >= maxAttempts){
+                failure = new ConnectionFailedException("No SYN_ACK from " + serverAddress + " after "
+                        + synTransmissions + " attempts");
+                return;
+            }
+            if(isVerbose){
+                System.out.println("No response in handshake within time limit.");
+                System.out.println("Attempting to make handshake request again.");
+            }
+            policy.onTimeout();
+            sendSyn();
+        }
+    }
+
+    /**
+     * True while the session is established and has not failed, so it can carry another request.
+     */
+    boolean isOpen(){
+        return established && failure == null;
+    }
+
+    void setVerbose(boolean isVerbose){
+        this.isVerbose = isVerbose;
+    }
+
+    void setStats(TransportStats stats){
+        this.stats = stats;
+        connection.setStats(stats);
+    }
+
+    /**
+     * Unregisters the session and returns its buffers to the pool. Does nothing once closed.
+     */
+    void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        loop.unregister(peerKey);
+        connection.close();
+        PacketBufferPool.shared().release(syn);
+    }
+
+    /**
+     * Turns a missed deadline into the session's failure, and throws the failure if there is one.
+     */
+    private void checkFailure(boolean done, String timeoutMessage) throws ConnectionFailedException{
+        if(!done && failure == null){
+            failure = new ConnectionFailedException(timeoutMessage);
+        }
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    private static long deadline(long timeout){
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    private void sendSyn() throws IOException{
+        loop.getChannel().send(syn, loop.getRouterAddress());
+        syn.rewind();
+        synSentAt = System.nanoTime();
+        if(synTransmissions == 0){
+            firstSynSentAt = synSentAt;
+        }
+        synTransmissions++;
+    }
+
+    private void sendHandshakeAck() throws IOException{
+        ByteBuffer ack = PacketBufferPool.shared().acquire();
+        try{
+            Packet.writeHeader(ack, Packet.ACK, 0, Packet.addressBits(serverAddress.getAddress()),
+                    serverAddress.getPort());
+            ack.flip();
+            loop.getChannel().send(ack, loop.getRouterAddress());
+        } finally {
+            PacketBufferPool.shared().release(ack);
+        }
+    }
+}
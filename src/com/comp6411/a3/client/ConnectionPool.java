@@ -0,0 +1,91 @@
+package com.comp6411.a3.client;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionPool keeps the handshaken sessions of a ClientEventLoop open between requests, keyed by
+ * server address, so consecutive requests to one server pay for a single handshake.
+ * A session is only handed out again while it has been idle for less than idleTimeout, which has
+ * to stay below the server's own idle timeout (ServerTransport.DEFAULT_IDLE_TIMEOUT), otherwise
+ * the server may already have forgotten the connection.
+ * All sessions of a loop share its channel, and so its local port, so there is at most one session
+ * per server and it is either idle in the pool or in use.
+ * Not thread safe, it is used from the thread running the loop.
+ */
+class ConnectionPool implements Closeable {
+    static final long DEFAULT_IDLE_TIMEOUT = 15000;
+
+    private static class Idle {
+        final ClientSession session;
+        final long since;
+
+        Idle(ClientSession session, long since){
+            this.session = session;
+            this.since = since;
+        }
+    }
+
+    private final long idleTimeoutNanos;
+    private final Map<InetSocketAddress, Idle> idle = new HashMap<>();
+
+    ConnectionPool(long idleTimeout){
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    }
+
+    /**
+     * Takes the idle session to server out of the pool, or returns null if there is none that is
+     * still fresh enough, in which case the caller opens a new one.
+     */
+    ClientSession acquire(InetSocketAddress server){
+        evictIdle();
+        Idle entry = idle.remove(server);
+        return entry == null ? null : entry.session;
+    }
+
+    /**
+     * Gives a session back once its response has been received. Sessions the server is closing
+     * are closed instead of being pooled.
+     */
+    void release(InetSocketAddress server, ClientSession session, boolean reusable){
+        if(!reusable){
+            session.close();
+            return;
+        }
+        Idle previous = idle.put(server, new Idle(session, System.nanoTime()));
+        if(previous != null && previous.session != session){
+            previous.session.close();
+        }
+    }
+
+    /**
+     * Closes the sessions idle for longer than the idle timeout.
+     */
+    void evictIdle(){
+        long now = System.nanoTime();
+        Iterator<Idle> iterator = idle.values().iterator();
+        while(iterator.hasNext()){
+            Idle entry = iterator.next();
+            if(now - entry.since >= idleTimeoutNanos){
+                iterator.remove();
+                entry.session.close();
+            }
+        }
+    }
+
+    int size(){
+        return idle.size();
+    }
+
+    @Override
+    public void close(){
+        for(Idle entry: idle.values()){
+            entry.session.close();
+        }
+        idle.clear();
+    }
+}
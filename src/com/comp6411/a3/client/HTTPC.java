@@ -1,43 +1,100 @@
 package com.comp6411.a3.client;
 
-import com.comp6411.a3.Packet;
+import com.comp6411.a3.AdaptiveRetransmissionPolicy;
+import com.comp6411.a3.CongestionController;
+import com.comp6411.a3.ConnectionFailedException;
+import com.comp6411.a3.Log;
+import com.comp6411.a3.NewRenoCongestionController;
+import com.comp6411.a3.ReliableConnection;
+import com.comp6411.a3.RetransmissionPolicy;
 
 import javax.xml.crypto.Data;
 import java.io.*;
 import java.net.*;
 
 import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.ArrayList;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Set;
-
-import static java.nio.channels.SelectionKey.OP_READ;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Supplier;
 
 
 public class HTTPC {
 
-    private int sequenceNumber;
-    private List<Long> receivedAcknowledgements;
-    private int timeout;
-    private int numberOfAcks;
+    private Supplier<RetransmissionPolicy> retransmissionPolicy;
+    private Supplier<CongestionController> congestionController;
+    private int windowSize;
+    private int maxAttempts;
+    private long connectTimeout;
+    private long requestTimeout;
+    private boolean keepAlive;
+    private long idleTimeout;
     private boolean debug;
 
+    // Shared by every request, with the sessions kept alive between them.
+    private ClientEventLoop loop;
+    private ConnectionPool pool;
+
 
     HTTPC(boolean debug){
-        this.sequenceNumber = 0;
-        this.receivedAcknowledgements = new ArrayList<>();
-        this.timeout = 10000;
-        this.numberOfAcks = 0;
+        this(debug, ReliableConnection.DEFAULT_WINDOW_SIZE);
+    }
+
+    HTTPC(boolean debug, int windowSize){
+        this.retransmissionPolicy = AdaptiveRetransmissionPolicy::new;
+        this.congestionController = NewRenoCongestionController::new;
+        this.windowSize = windowSize;
+        this.maxAttempts = ReliableConnection.DEFAULT_MAX_TRANSMISSIONS;
+        this.connectTimeout = ClientSession.DEFAULT_CONNECT_TIMEOUT;
+        this.requestTimeout = ClientSession.DEFAULT_REQUEST_TIMEOUT;
+        this.keepAlive = true;
+        this.idleTimeout = ConnectionPool.DEFAULT_IDLE_TIMEOUT;
         this.debug = debug;
     }
 
+    void setRetransmissionPolicy(Supplier<RetransmissionPolicy> retransmissionPolicy){
+        /**
+         * Sets the factory creating the retransmission policy of every new connection.
+         */
+        this.retransmissionPolicy = retransmissionPolicy;
+    }
+
+    void setCongestionController(Supplier<CongestionController> congestionController){
+        /**
+         * Sets the factory creating the congestion controller of every new connection.
+         */
+        this.congestionController = congestionController;
+    }
+
+    void setRetryLimits(int maxAttempts, long connectTimeout, long requestTimeout){
+        /**
+         * Bounds the retries of every request: each packet is sent at most maxAttempts times, the
+         * handshake gives up after connectTimeout ms and the response after requestTimeout ms.
+         */
+        this.maxAttempts = maxAttempts;
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+    }
+
+    void setKeepAlive(boolean keepAlive, long idleTimeout){
+        /**
+         * Keeps the connection to a server open after a request, so the next request to that server
+         * skips the handshake, as long as it comes within idleTimeout ms.
+         */
+        this.keepAlive = keepAlive;
+        this.idleTimeout = idleTimeout;
+        if(pool != null){
+            pool.close();
+            pool = new ConnectionPool(idleTimeout);
+        }
+    }
+
     void handleRequest(String[] userCommand) throws FileNotFoundException, IOException, MalformedURLException {
 
         // Create a List to hold the command instructions
@@ -77,7 +134,7 @@ public class HTTPC {
         boolean isVerbose = false;
         boolean isO = false;
         String host = "";
-        String urlString = "";
+        List<String> urlStrings = new ArrayList<>();
         String query = "";
         String path = "/";
         String outputFileName = "";
@@ -87,7 +144,12 @@ public class HTTPC {
         final String HttpVersion = "HTTP/1.0";
         final String CRLF = "\r\n";
         StringBuilder createPostData = new StringBuilder();
-        resetCtx();
+        Path postFile = null;
+        // Bulk mode: the requests come from a manifest and run concurrently, -o names a directory.
+        boolean isBulk = inputCommand.contains("-m");
+        String manifest = null;
+        int sessions = 1;
+        Path outputDirectory = null;
 
         // If it is a get request, confirm only valid options are used
         if(operation.equals("get") && (inputCommand.contains("-d") || inputCommand.contains("-f"))){
@@ -102,6 +164,12 @@ public class HTTPC {
             return;
         }
 
+        // A manifest replaces the body of a POST
+        if(isBulk && (inputCommand.contains("-d") || inputCommand.contains("-f"))){
+            System.out.println("Cannot use [-d] or [-f] with [-m]. Run \"httpc help " + operation + "\" for more help.");
+            return;
+        }
+
         // Extract information from the input command till it is empty
         while(inputCommand.size()>0){
             if(inputCommand.get(0).equals("-v")){
@@ -153,21 +221,14 @@ public class HTTPC {
                     return;
                 }
 
-                // If file exists and is readable, read and add data as post data. Else, raise appropriate error.
-                try{
-                    String fileName = "./resources/" + inputCommand.get(0);
-                    List<String> fileData = Files.readAllLines(Paths.get(fileName));
-                    for(String line: fileData){
-                        createPostData.append(line + "\n");
-                    }
-                    inputCommand.remove(0);
-                } catch (FileNotFoundException FNFE){
-                    System.out.println("File not found. Confirm that the file exists or the name is correct.");
-                    return;
-                } catch (IOException IOE){
+                // If file exists and is readable, send its content as post data. Else, raise appropriate error.
+                // The file is streamed as is when the request is sent, whatever its size.
+                postFile = Paths.get("./resources/" + inputCommand.get(0));
+                if(!Files.isRegularFile(postFile) || !Files.isReadable(postFile)){
                     System.out.println("No such file exists.");
                     return;
                 }
+                inputCommand.remove(0);
             } else if(inputCommand.get(0).equals("-o")){
                 inputCommand.remove(0);
                 isO = true;
@@ -179,6 +240,11 @@ public class HTTPC {
                     return;
                 }
 
+                if(isBulk){
+                    outputDirectory = Paths.get("./resources/" + inputCommand.get(0));
+                    inputCommand.remove(0);
+                    continue;
+                }
                 outputFileName = "./resources/" + inputCommand.get(0);
                 if(!outputFileName.contains(".txt")) {
                     outputFileName += ".txt";
@@ -186,36 +252,75 @@ public class HTTPC {
                 File outputFile = new File(outputFileName);
                 outputFileWriter = new BufferedWriter(new FileWriter(outputFile,true));
                 inputCommand.remove(0);
+            } else if(inputCommand.get(0).equals("-m")){
+                inputCommand.remove(0);
+
+                // If manifest is missing, print error message and return
+                if(inputCommand.isEmpty()){
+                    System.out.println("Invalid command. No manifest found.");
+                    System.out.println("Check \"httpc help " + operation + "\" for more help.");
+                    return;
+                }
+                manifest = inputCommand.get(0).replace("'", "").replace("\"", "");
+                inputCommand.remove(0);
+            } else if(inputCommand.get(0).equals("-n")){
+                inputCommand.remove(0);
+
+                // If the number of sessions is missing or invalid, print error message and return
+                try{
+                    sessions = Integer.parseInt(inputCommand.get(0));
+                    if(sessions < 1){
+                        throw new NumberFormatException();
+                    }
+                } catch(IndexOutOfBoundsException | NumberFormatException e){
+                    System.out.println("Invalid command. [-n] requires a number of sessions of at least 1.");
+                    System.out.println("Check \"httpc help " + operation + "\" for more help.");
+                    return;
+                }
+                inputCommand.remove(0);
             }
             else{
-                // check if it is URL
-                urlString = inputCommand.get(0);
+                // check if it is URL, several of them are fetched over one connection
+                urlStrings.add(inputCommand.get(0));
                 inputCommand.remove(0);
             }
         }
 
-        // Create the url and get host, query, and port. Raise error and return if inappropriate URL.
+        if(isBulk){
+            handleBulk(operation, manifest, urlStrings, headers, sessions, outputDirectory, isVerbose);
+            return;
+        }
+
+        // Create the urls and get host, query, and port. Raise error and return if inappropriate URL.
+        List<URL> urls = new ArrayList<>();
         try{
-            urlString = urlString.replace("'", "");
-            urlString = urlString.replace("\"", "");
-            url = new URL(urlString);
-            host = url.getHost();
-            if(host.isEmpty()){
-                throw new MalformedURLException();
-            }
-            if(url.getQuery()!=null){
-                query = url.getQuery();
-            }
-            if(!url.getPath().isEmpty()){
-                path = url.getPath();
+            for(String urlString: urlStrings){
+                urlString = urlString.replace("'", "");
+                urlString = urlString.replace("\"", "");
+                url = new URL(urlString);
+                if(url.getHost().isEmpty()){
+                    throw new MalformedURLException();
+                }
+                urls.add(url);
             }
-            if(url.getPort()!=-1){
-                port = url.getPort();
+            if(urls.isEmpty()){
+                throw new MalformedURLException();
             }
         } catch(MalformedURLException MURL){
             System.out.println("Malformed URL. Enter appropriate URL.");
             return;
         }
+        url = urls.get(0);
+        host = url.getHost();
+        if(url.getPort()!=-1){
+            port = url.getPort();
+        }
+        for(URL other: urls){
+            if(!other.getHost().equals(host) || (other.getPort() == -1 ? 8007 : other.getPort()) != port){
+                System.out.println("Several URLs must be on the same server, they are sent over one connection.");
+                return;
+            }
+        }
         // System.out.println("host: " + host + "\nquery: " + query + "\npath: " + path + "\nport: " + port);
 
         // Create post data string
@@ -230,180 +335,266 @@ public class HTTPC {
         SocketAddress routerAddress = new InetSocketAddress(routerHost, routerPort);
         InetSocketAddress serverAddress = new InetSocketAddress(serverHost, serverPort);
 
-        // open the channel
-        try(DatagramChannel channel = DatagramChannel.open()){
-            // initiate handshake
-            System.out.println("Initiating handshake\n");
-            completeHandshake(routerAddress, serverAddress, channel, isVerbose);
-            System.out.println("\nHandshake completed.\n");
-
-            // Create the message to send
-            StringBuilder messageToServer = new StringBuilder();
-
-            // add operation type and the query parameters if present
-            if(!query.isEmpty()){
-                messageToServer.append(operation.toUpperCase() + " " +  path + "?" + query + " " + HttpVersion + CRLF);
+        // reuse the connection kept alive to the server, or open one on the shared channel
+        ClientSession session = null;
+        boolean reusable = false;
+        boolean channelFailed = false;
+        try{
+            ClientEventLoop loop = eventLoop(routerAddress);
+            session = pool.acquire(serverAddress);
+            if(session != null){
+                if(debug){
+                    Log.info(() -> "Reusing the connection to " + serverAddress);
+                }
+                session.setVerbose(isVerbose);
+            } else {
+                // initiate handshake
+                if(debug){
+                    Log.info(() -> "Initiating handshake with " + serverAddress);
+                }
+                session = new ClientSession(loop, serverAddress, this.windowSize, this.retransmissionPolicy.get(),
+                        this.congestionController.get(), this.maxAttempts, isVerbose);
+                session.connect(this.connectTimeout);
+                if(debug){
+                    Log.info(() -> "Handshake completed.");
+                }
             }
-            else {
-                messageToServer.append(operation.toUpperCase() + " " + path + " " + HttpVersion + CRLF);
+
+            // add postdata if present, the same body is sent to every url
+            ByteBuffer body = null;
+            if(postFile != null){
+                try(FileChannel file = FileChannel.open(postFile, StandardOpenOption.READ)){
+                    body = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                }
+            } else if(!postData.isEmpty()){
+                body = ByteBuffer.wrap(postData.getBytes(StandardCharsets.UTF_8));
             }
 
-            // add host name
-            messageToServer.append("Host: " + host + CRLF);
+            // Create one message per url. Several are pipelined: sent back to back, each tagged with
+            // an X-Request-Id the server echoes, and all but the last keep the connection open.
+            boolean pipelined = urls.size() > 1;
+            List<ByteBuffer[]> payloads = new ArrayList<>();
+            List<Long> requestIds = new ArrayList<>();
+            for(int i = 0; i < urls.size(); i++){
+                URL target = urls.get(i);
+                query = target.getQuery() != null ? target.getQuery() : "";
+                path = !target.getPath().isEmpty() ? target.getPath() : "/";
+                StringBuilder messageToServer = new StringBuilder();
+
+                // add operation type and the query parameters if present
+                if(!query.isEmpty()){
+                    messageToServer.append(operation.toUpperCase() + " " +  path + "?" + query + " " + HttpVersion + CRLF);
+                }
+                else {
+                    messageToServer.append(operation.toUpperCase() + " " + path + " " + HttpVersion + CRLF);
+                }
 
-            // add headers if present
-            if(headers.size()!=0){
-                for(String keyValuePair: headers){
-                    messageToServer.append(keyValuePair + CRLF);
+                // add host name
+                messageToServer.append("Host: " + host + CRLF);
+                if(this.keepAlive || i < urls.size() - 1){
+                    messageToServer.append("Connection: keep-alive" + CRLF);
+                }
+                if(pipelined){
+                    long requestId = session.nextRequestId();
+                    requestIds.add(requestId);
+                    messageToServer.append("X-Request-Id: " + requestId + CRLF);
                 }
-            }
 
-            // add postdata if present
-            if(!postData.isEmpty()){
-                messageToServer.append("Content-Length: " + postData.length() + CRLF);
-                messageToServer.append(postData + CRLF);
-            }
+                // add headers if present
+                if(headers.size()!=0){
+                    for(String keyValuePair: headers){
+                        messageToServer.append(keyValuePair + CRLF);
+                    }
+                }
+
+                // its length is in bytes and a blank line ends the headers
+                if(body != null){
+                    messageToServer.append("Content-Length: " + body.remaining() + CRLF);
+                }
+                messageToServer.append(CRLF);
 
-            // Create payload string
-            String payload = messageToServer.toString();
-//            System.out.println("\nMain payload length: " + payload.getBytes().length + "\n");
+                // Create payload
+                ByteBuffer head = ByteBuffer.wrap(messageToServer.toString().getBytes(StandardCharsets.UTF_8));
+                payloads.add(body != null ? new ByteBuffer[]{head, body.duplicate()} : new ByteBuffer[]{head});
+            }
 
-            // Send the payload now
-            String response;
-            do{
-                response = transmitPayload(routerAddress, serverAddress, channel, payload, isVerbose);
-            }while (response.equalsIgnoreCase(""));
+            // Send the payloads now
+            List<String> responses = new ArrayList<>();
+            for(byte[] response: session.pipeline(payloads, this.requestTimeout)){
+                responses.add(new String(response, StandardCharsets.UTF_8));
+            }
+            if(pipelined){
+                responses = matchResponses(responses, requestIds);
+            }
+            reusable = this.keepAlive && keepsAlive(responses.get(responses.size() - 1)) && session.isOpen();
 
+            for(String response: responses){
 //            System.out.println("RESPONSE IN MAIN FUNC: " + response);
-            // Print the response
-            if(!isVerbose){
-                //System.out.println(response.substring(response.indexOf('{')));
-                try{
-                    response = response.substring(response.indexOf('{'));
-                }catch(StringIndexOutOfBoundsException e){
+                // Print the response
+                if(!isVerbose){
+                    //System.out.println(response.substring(response.indexOf('{')));
+                    try{
+                        response = response.substring(response.indexOf('{'));
+                    }catch(StringIndexOutOfBoundsException e){
 
+                    }
+                }
+                if(isO){
+                    outputFileWriter.write(response + "\n");
+                    outputFileWriter.flush();
+                } else{
+                    System.out.println(response);
                 }
             }
             if(isO){
-                outputFileWriter.write(response + "\n");
-                outputFileWriter.flush();
                 outputFileWriter.close();
-            } else{
-                System.out.println(response);
             }
 
+        } catch (ConnectionFailedException e){
+            System.out.println("Request failed: " + e.getMessage());
         } catch (IOException e){
             System.out.println("Error opening the channel.");
             e.printStackTrace();
+            channelFailed = true;
+        } finally {
+            if(session != null){
+                pool.release(serverAddress, session, reusable);
+            }
+            if(channelFailed){
+                closeEventLoop();
+            }
         }
     }
 
-    private void completeHandshake(SocketAddress routerAddress,
-                                   InetSocketAddress serverAddress, DatagramChannel channel,
-                                   boolean isVerbose) throws IOException{
-        // send message to initiate handshake with the sequence number 0
-        String requestMessage = "Client handshake request.";
-        Packet packet = new Packet.Builder()
-                .setType(0)
-                .setSequenceNumber(this.sequenceNumber)
-                .setPortNumber(serverAddress.getPort())
-                .setPeerAddress(serverAddress.getAddress())
-                .setPayload(requestMessage.getBytes())
-                .create();
-        channel.send(packet.toBuffer(), routerAddress);
-
-        // Try to receive a packet within timeout.
-        channel.configureBlocking(false);
-        Selector selector = Selector.open();
-        channel.register(selector, OP_READ);
-
-        selector.select(this.timeout);
-
-        Set<SelectionKey> keys = selector.selectedKeys();
-        if(keys.isEmpty()){
-            if(isVerbose){
-                System.out.println("No response in handshake within time limit.");
-                System.out.println("Attempting to make handshake request again.");
+    private void handleBulk(String operation, String manifest, List<String> urlStrings, List<String> headers,
+                            int sessions, Path outputDirectory, boolean isVerbose){
+        /**
+         * Runs the requests of a manifest concurrently over the given number of sessions and
+         * prints a summary. For GET the manifest is a file of URLs, for POST a glob of the files to
+         * upload to the one URL given, both under ./resources.
+         */
+        List<BulkTransfer.Job> jobs;
+        try{
+            if(operation.equals("get")){
+                if(!urlStrings.isEmpty()){
+                    System.out.println("With [-m] the URLs are read from the manifest.");
+                    return;
+                }
+                jobs = BulkTransfer.getJobs(Paths.get("./resources/" + manifest), headers);
+            } else {
+                if(urlStrings.size() != 1){
+                    System.out.println("With [-m] POST requires the one URL the files are uploaded to.");
+                    return;
+                }
+                URL target = new URL(urlStrings.get(0).replace("'", "").replace("\"", ""));
+                jobs = BulkTransfer.postJobs(Paths.get("./resources"), manifest, target, headers);
             }
-            completeHandshake(routerAddress, serverAddress, channel, isVerbose);
+        } catch(MalformedURLException | IllegalStateException e){
+            System.out.println("Malformed URL in the manifest: " + e.getMessage());
+            return;
+        } catch(IOException e){
+            System.out.println("Error reading the manifest: " + e.getMessage());
+            return;
+        }
+        if(jobs.isEmpty()){
+            System.out.println("Nothing to transfer, the manifest is empty.");
             return;
         }
 
-        // get the received packet
-        ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_LEN);
-        SocketAddress router = channel.receive(buf);
-        buf.flip();
-        Packet resp = Packet.fromBuffer(buf);
-        if(!this.receivedAcknowledgements.contains(resp.getSequenceNumber())){
-            String payload = new String(resp.getPayload(), StandardCharsets.UTF_8);
-//        System.out.println("Payload: " + payload);
-            if(payload.equals("Handshake ACK")){
-                if(isVerbose){
-                    System.out.println("Payload received from server: " + payload);
-                }
-                this.receivedAcknowledgements.add(resp.getSequenceNumber());
-                keys.clear();
-            } else{
-                if(this.debug){
-                    System.out.println("Unexpected response: " + payload);
-                }
-            }
+        HttpcClient.Builder client = new HttpcClient.Builder()
+                .setRouterAddress(new InetSocketAddress("localhost", 3000))
+                .setRetransmissionPolicy(this.retransmissionPolicy)
+                .setCongestionController(this.congestionController)
+                .setWindowSize(this.windowSize)
+                .setRetryLimits(this.maxAttempts, this.connectTimeout, this.requestTimeout)
+                .setIdleTimeout(this.idleTimeout)
+                .setDebug(this.debug);
+        try{
+            new BulkTransfer(client, sessions, outputDirectory, isVerbose).run(jobs);
+        } catch(IOException e){
+            System.out.println("Error opening the channel.");
+            e.printStackTrace();
         }
     }
 
-    private String transmitPayload(SocketAddress routerAddress,
-                                   InetSocketAddress serverAddress, DatagramChannel channel, String payload,
-                                   boolean isVerbose) throws
-            IOException{
-        // Prepare byte array of payload
-        byte[] requestMessage = payload.getBytes();
-        if(requestMessage.length>Packet.MAX_LEN){
-            System.out.println("Way too large message. Need to do something about this!");
-            return "";
+    private ClientEventLoop eventLoop(SocketAddress routerAddress) throws IOException{
+        /**
+         * The channel shared by all requests, opened on first use. Its local port identifies this
+         * client to the server for as long as it lives.
+         */
+        if(loop == null || !loop.getRouterAddress().equals(routerAddress)){
+            closeEventLoop();
+            loop = new ClientEventLoop(routerAddress, this.debug);
+            pool = new ConnectionPool(this.idleTimeout);
         }
+        return loop;
+    }
 
-        //Prepare and send the packet
-        this.sequenceNumber = this.sequenceNumber + 1;
-        Packet packet = new Packet.Builder()
-                .setType(0)
-                .setSequenceNumber(this.sequenceNumber)
-                .setPortNumber(serverAddress.getPort())
-                .setPeerAddress(serverAddress.getAddress())
-                .setPayload(requestMessage)
-                .create();
-        channel.send(packet.toBuffer(), routerAddress);
-
-        // Try to receive a packet within timeout.
-        channel.configureBlocking(false);
-        Selector selector = Selector.open();
-        channel.register(selector, OP_READ);
-        selector.select(this.timeout);
-
-        // Check if any packer is received or not.
-        Set<SelectionKey> keys = selector.selectedKeys();
-        if(keys.isEmpty()){
-            if(isVerbose){
-                System.out.println("No response within time limit.");
-            }
-            do{
-                payload = transmitPayload(routerAddress, serverAddress, channel, payload, isVerbose);
-            }while (payload.equalsIgnoreCase(""));
+    void closeEventLoop(){
+        /**
+         * Closes the kept alive connections and the shared channel.
+         */
+        if(loop == null){
+            return;
+        }
+        pool.close();
+        try{
+            loop.close();
+        } catch (IOException e){
+            System.out.println("Error closing the channel.");
+        }
+        loop = null;
+        pool = null;
+    }
 
-            return payload;
+    private static List<String> matchResponses(List<String> responses, List<Long> requestIds){
+        /**
+         * Puts pipelined responses in the order of their requests, by the X-Request-Id they echo.
+         * A response without a known id keeps its position, the server answers in order anyway.
+         */
+        String[] ordered = new String[requestIds.size()];
+        List<String> unmatched = new ArrayList<>();
+        for(String response: responses){
+            int index = requestIds.indexOf(requestId(response));
+            if(index >= 0 && ordered[index] == null){
+                ordered[index] = response;
+            } else {
+                unmatched.add(response);
+            }
         }
+        List<String> result = new ArrayList<>();
+        for(String response: ordered){
+            result.add(response != null ? response : unmatched.remove(0));
+        }
+        return result;
+    }
 
-        // get the received packet
-        ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_LEN);
-        SocketAddress router = channel.receive(buf);
-        buf.flip();
-        Packet resp = Packet.fromBuffer(buf);
-        if(!this.receivedAcknowledgements.contains(resp.getSequenceNumber())){
-            payload = new String(resp.getPayload(), StandardCharsets.UTF_8);
-            this.receivedAcknowledgements.add(resp.getSequenceNumber());
-            // System.out.println("Payload: \n" + payload);
-            return payload;
+    private static Long requestId(String response){
+        /**
+         * The X-Request-Id echoed in the head of the response, or null.
+         */
+        String name = "\r\nx-request-id:";
+        int headEnd = response.indexOf("\r\n\r\n");
+        String head = (headEnd < 0 ? response : response.substring(0, headEnd + 2)).toLowerCase();
+        int start = head.indexOf(name);
+        if(start < 0){
+            return null;
+        }
+        start += name.length();
+        try{
+            return Long.parseLong(head.substring(start, head.indexOf("\r\n", start)).trim());
+        } catch (NumberFormatException e){
+            return null;
         }
-        return "";
+    }
+
+    private static boolean keepsAlive(String response){
+        /**
+         * Whether the head of the response says the server keeps the connection open.
+         */
+        int headEnd = response.indexOf("\r\n\r\n");
+        String head = (headEnd < 0 ? response : response.substring(0, headEnd)).toLowerCase();
+        return head.contains("\r\nconnection: keep-alive");
     }
 
     private void handleHelp(List<String> inputCommand){
@@ -462,10 +653,16 @@ public class HTTPC {
          * Prints help for httpc get.
          */
         System.out.println("httpc help get");
-        System.out.println("usage: httpc get [-v] [-h key:value] URL");
+        System.out.println("usage: httpc get [-v] [-h key:value] [-o file] URL [URL...]");
+        System.out.println("       httpc get [-v] [-h key:value] -m manifest [-n sessions] [-o directory]");
         System.out.println("Get executes a HTTP GET request for a given URL." + "\n\t" +
                 "-v\tPrints the detail of the response such as protocol, status,and headers." + "\n\t" +
-                "-h key:value\tAssociates headers to HTTP Request with the format 'key:value'.");
+                "-h key:value\tAssociates headers to HTTP Request with the format 'key:value'." + "\n\t" +
+                "-m manifest\tRequests every URL listed in the manifest file, one per line." + "\n\t" +
+                "-n sessions\tNumber of connections the manifest is spread over. Default is 1." + "\n\t" +
+                "-o directory\tWith [-m], writes each response body to a file of the directory.");
+        System.out.println("Several URLs on the same server are requested back to back over one connection.");
+        System.out.println("With [-m], a summary of throughput and latency percentiles follows the transfer.");
         return;
     }
 
@@ -474,20 +671,20 @@ public class HTTPC {
          * Prints help for httpc post.
          */
         System.out.println("httpc help get");
-        System.out.println("usage: httpc post [-v] [-h key:value] [-d inline-data] [-f file] URL");
+        System.out.println("usage: httpc post [-v] [-h key:value] [-d inline-data] [-f file] URL [URL...]");
+        System.out.println("       httpc post [-v] [-h key:value] -m glob [-n sessions] [-o directory] URL");
         System.out.println("Post executes a HTTP POST request for a given URL with inline data or from " +
                 "file." + "\n\t" +
                 "-v\tPrints the detail of the response such as protocol, status,and headers." + "\n\t" +
                 "-h key:value\tAssociates headers to HTTP Request with the format 'key:value'." + "\n\t" +
                 "-d string\tAssociates an inline data to the body HTTP POST request." + "\n\t" +
-                "-f file\tAssociates the content of a file to the body HTTP POST request.");
-        System.out.println("Either [-d] or [-f] can be used but not both.");
+                "-f file\tAssociates the content of a file to the body HTTP POST request." + "\n\t" +
+                "-m glob\tUploads every file matching the glob, e.g. 'docs/*.txt', to URL/file-name." + "\n\t" +
+                "-n sessions\tNumber of connections the files are spread over. Default is 1." + "\n\t" +
+                "-o directory\tWith [-m], writes each response body to a file of the directory.");
+        System.out.println("Either [-d], [-f] or [-m] can be used, only one of them.");
+        System.out.println("Several URLs on the same server each get the same body, back to back over one " +
+                "connection.");
         return;
     }
-
-    private void resetCtx(){
-        this.sequenceNumber = 0;
-        this.receivedAcknowledgements = new ArrayList<>();
-        this.numberOfAcks = 0;
-    }
-}
+}
\ No newline at end of file
@@ -1,14 +1,30 @@
 package com.comp6411.a3.client;
 
+import com.comp6411.a3.CongestionController;
+import com.comp6411.a3.FixedRetransmissionPolicy;
+import com.comp6411.a3.ReliableConnection;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class HTTPCClientDriver {
 
     public static void main(String[] args) {
         String[] command;
-        HTTPC httpc = new HTTPC(true);
+        HTTPC httpc;
+        try{
+            httpc = createHTTPC(args);
+        } catch(NumberFormatException e){
+            System.out.println("Invalid option. Window size, attempts and timeouts should be integers.");
+            return;
+        } catch(IllegalArgumentException e){
+            System.out.println("Invalid option. " + e.getMessage());
+            return;
+        }
         HTTPCClientDriver httpcClientDriver = new HTTPCClientDriver();
         while(true){
             try{
@@ -26,6 +42,71 @@ public class HTTPCClientDriver {
         }
     }
 
+    static HTTPC createHTTPC(String[] args){
+        /**
+         * Creates the client with the transport options the driver was started with:
+         * -v prints the transport diagnostics,
+         * -w window size in packets,
+         * -r fixed retransmission timeout in ms, instead of the adaptive one,
+         * -c congestion controller, reno or cubic,
+         * -a transmissions of a packet before giving up, 0 for no limit,
+         * -tc handshake timeout and -tr response timeout in ms,
+         * -k idle timeout in ms of the connections kept alive between requests, 0 to close them.
+         */
+        boolean debug = false;
+        int windowSize = ReliableConnection.DEFAULT_WINDOW_SIZE;
+        long fixedTimeout = 0;
+        String congestionController = "reno";
+        int maxAttempts = ReliableConnection.DEFAULT_MAX_TRANSMISSIONS;
+        long connectTimeout = ClientSession.DEFAULT_CONNECT_TIMEOUT;
+        long requestTimeout = ClientSession.DEFAULT_REQUEST_TIMEOUT;
+        long idleTimeout = ConnectionPool.DEFAULT_IDLE_TIMEOUT;
+
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        while(options.size() > 0){
+            String option = options.remove(0);
+            if(option.equalsIgnoreCase("-v")){
+                debug = true;
+                continue;
+            }
+            if(options.isEmpty()){
+                throw new IllegalArgumentException("No value given for " + option);
+            }
+            String value = options.remove(0);
+            if(option.equalsIgnoreCase("-w")){
+                windowSize = Integer.parseInt(value);
+            } else if(option.equalsIgnoreCase("-r")){
+                fixedTimeout = Long.parseLong(value);
+            } else if(option.equalsIgnoreCase("-c")){
+                congestionController = value;
+            } else if(option.equalsIgnoreCase("-a")){
+                maxAttempts = Integer.parseInt(value);
+            } else if(option.equalsIgnoreCase("-tc")){
+                connectTimeout = Long.parseLong(value);
+            } else if(option.equalsIgnoreCase("-tr")){
+                requestTimeout = Long.parseLong(value);
+            } else if(option.equalsIgnoreCase("-k")){
+                idleTimeout = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if(windowSize < 1 || fixedTimeout < 0 || maxAttempts < 0 || connectTimeout < 1 || requestTimeout < 1
+                || idleTimeout < 0){
+            throw new IllegalArgumentException("Window size and timeouts should be positive.");
+        }
+
+        HTTPC httpc = new HTTPC(debug, windowSize);
+        if(fixedTimeout > 0){
+            long timeout = fixedTimeout;
+            httpc.setRetransmissionPolicy(() -> new FixedRetransmissionPolicy(timeout));
+        }
+        httpc.setCongestionController(CongestionController.forName(congestionController));
+        httpc.setRetryLimits(maxAttempts, connectTimeout, requestTimeout);
+        httpc.setKeepAlive(idleTimeout > 0, idleTimeout > 0 ? idleTimeout : ConnectionPool.DEFAULT_IDLE_TIMEOUT);
+        return httpc;
+    }
+
     boolean checkCommandValidity(String[] command){
         /**
          * Makes initial checks of the command to discard an obviously incorrect command.
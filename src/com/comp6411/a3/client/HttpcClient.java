@@ -0,0 +1,526 @@
+package com.comp6411.a3.client;
+
+import com.comp6411.a3.AdaptiveRetransmissionPolicy;
+import com.comp6411.a3.CongestionController;
+import com.comp6411.a3.ConnectionFailedException;
+import com.comp6411.a3.Log;
+import com.comp6411.a3.NewRenoCongestionController;
+import com.comp6411.a3.ReliableConnection;
+import com.comp6411.a3.RetransmissionPolicy;
+import com.comp6411.a3.TransportStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * HttpcClient sends requests to HTTPFS servers without blocking its callers: send returns a
+ * CompletableFuture completed with the response, so a few threads can keep thousands of requests
+ * in flight.
+ * The client runs a small, fixed number of event loops, each a ClientEventLoop on its own daemon
+ * thread with its own channel. Requests are spread over the loops round robin. A loop keeps one
+ * session per server open, and pipelines up to maxPipeline requests on it, tagged with an
+ * X-Request-Id so that each response completes the right future. Sessions are closed once idle for
+ * idleTimeout, or when the server answers with Connection: close.
+ * Futures are completed on the loop threads: dependent stages that are not async run there too,
+ * and must not block.
+ * Thread safe.
+ */
+public class HttpcClient implements Closeable {
+
+    private final SocketAddress routerAddress;
+    private final Supplier<RetransmissionPolicy> retransmissionPolicy;
+    private final Supplier<CongestionController> congestionController;
+    private final int windowSize;
+    private final int maxAttempts;
+    private final long connectTimeoutNanos;
+    private final long requestTimeoutNanos;
+    private final long idleTimeoutNanos;
+    private final int maxPipeline;
+    private final boolean debug;
+    private final TransportStats transportStats;
+
+    private final Worker[] workers;
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private volatile boolean closed;
+
+    private HttpcClient(Builder builder) throws IOException{
+        this.routerAddress = builder.routerAddress;
+        this.retransmissionPolicy = builder.retransmissionPolicy;
+        this.congestionController = builder.congestionController;
+        this.windowSize = builder.windowSize;
+        this.maxAttempts = builder.maxAttempts;
+        this.connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.connectTimeout);
+        this.requestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.requestTimeout);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.idleTimeout);
+        this.maxPipeline = builder.maxPipeline;
+        this.debug = builder.debug;
+        this.transportStats = builder.transportStats;
+
+        this.workers = new Worker[builder.eventLoops];
+        try{
+            for(int i = 0; i < workers.length; i++){
+                workers[i] = new Worker(new ClientEventLoop(routerAddress, debug));
+            }
+        } catch (IOException e){
+            close();
+            throw e;
+        }
+        for(int i = 0; i < workers.length; i++){
+            Thread thread = new Thread(workers[i], "httpc-loop-" + i);
+            thread.setDaemon(true);
+            workers[i].thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Queues the request and returns at once. The future completes with the response, or
+     * exceptionally with a ConnectionFailedException if the server could not be reached or did not
+     * answer within the request timeout, which counts from this call.
+     */
+    public CompletableFuture<Response> send(Request request){
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if(closed){
+            future.completeExceptionally(new ConnectionFailedException("Client is closed"));
+            return future;
+        }
+        Exchange exchange = new Exchange(request, future, System.nanoTime() + requestTimeoutNanos);
+        Worker worker = workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)];
+        worker.submit(exchange);
+        return future;
+    }
+
+    /**
+     * Closes every session and stops the loops. Requests not answered yet fail.
+     */
+    @Override
+    public void close(){
+        closed = true;
+        for(Worker worker: workers){
+            if(worker == null){
+                continue;
+            }
+            worker.loop.wakeup();
+            if(worker.thread != null && worker.thread != Thread.currentThread()){
+                try{
+                    worker.thread.join(TimeUnit.NANOSECONDS.toMillis(connectTimeoutNanos));
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            } else if(worker.thread == null){
+                worker.shutdown();
+            }
+        }
+    }
+
+    /**
+     * A request with the future of its response.
+     */
+    private static class Exchange {
+        final Request request;
+        final CompletableFuture<Response> future;
+        final long deadline;
+        long requestId;
+
+        Exchange(Request request, CompletableFuture<Response> future, long deadline){
+            this.request = request;
+            this.future = future;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * What a loop knows of one server: its session, if open, the requests waiting to be sent on
+     * it and the ones sent and not answered yet, in the order they were sent.
+     */
+    private static class Server {
+        final InetSocketAddress address;
+        final ArrayDeque<Exchange> waiting = new ArrayDeque<>();
+        final ArrayDeque<Exchange> inFlight = new ArrayDeque<>();
+        ClientSession session;
+        long connectDeadline;
+        long idleSince;
+        // The server answered Connection: close, nothing more is sent on the session.
+        boolean closing;
+
+        Server(InetSocketAddress address){
+            this.address = address;
+        }
+    }
+
+    /**
+     * One event loop and its thread. Every field but submitted is only used on that thread.
+     */
+    private class Worker implements Runnable {
+        final ClientEventLoop loop;
+        final Queue<Exchange> submitted = new ConcurrentLinkedQueue<>();
+        final Map<InetSocketAddress, Server> servers = new HashMap<>();
+        Thread thread;
+
+        Worker(ClientEventLoop loop){
+            this.loop = loop;
+        }
+
+        void submit(Exchange exchange){
+            submitted.add(exchange);
+            if(closed){
+                // The loop may have stopped before seeing it.
+                failSubmitted();
+            } else {
+                loop.wakeup();
+            }
+        }
+
+        @Override
+        public void run(){
+            try{
+                while(!closed){
+                    loop.runUntil(this::step, System.nanoTime() + TimeUnit.DAYS.toNanos(1));
+                }
+            } catch (IOException e){
+                Log.warn(() -> "Event loop stopped: " + e);
+                closed = true;
+            } finally {
+                shutdown();
+            }
+        }
+
+        /**
+         * One turn of the loop: takes the submitted requests, then moves every server along.
+         * Returns true once the client is closed, to stop the loop.
+         */
+        private boolean step(){
+            if(closed){
+                return true;
+            }
+            Exchange exchange;
+            while((exchange = submitted.poll()) != null){
+                InetSocketAddress address = exchange.request.getServerAddress();
+                if(address.isUnresolved()){
+                    exchange.future.completeExceptionally(
+                            new ConnectionFailedException("Unknown host " + address.getHostString()));
+                    continue;
+                }
+                servers.computeIfAbsent(address, Server::new).waiting.add(exchange);
+            }
+
+            long now = System.nanoTime();
+            Iterator<Server> iterator = servers.values().iterator();
+            while(iterator.hasNext()){
+                Server server = iterator.next();
+                try{
+                    progress(server, now);
+                } catch (RuntimeException e){
+                    // A bug in one server's handling must not stop the loop for every other server.
+                    failSession(server, new ConnectionFailedException("Request to " + server.address
+                            + " failed: " + e, e));
+                }
+                if(server.session == null && server.waiting.isEmpty()){
+                    iterator.remove();
+                }
+            }
+            return false;
+        }
+
+        private void progress(Server server, long now){
+            ClientSession session = server.session;
+            if(session != null && session.isOpen()){
+                receive(server);
+            }
+            expire(server, now);
+            if(!server.waiting.isEmpty() || !server.inFlight.isEmpty()){
+                server.idleSince = now;
+            }
+
+            if(session != null && session.getFailure() != null){
+                failSession(server, session.getFailure());
+            } else if(session != null && server.closing && server.inFlight.isEmpty()){
+                closeSession(server);
+            } else if(session != null && server.waiting.isEmpty() && server.inFlight.isEmpty()
+                    && now - server.idleSince >= idleTimeoutNanos){
+                closeSession(server);
+            }
+
+            if(server.session == null && !server.waiting.isEmpty()){
+                open(server, now);
+            }
+            if(server.session != null && server.session.isOpen() && !server.closing){
+                sendWaiting(server, now);
+            }
+        }
+
+        private void open(Server server, long now){
+            ClientSession session = new ClientSession(loop, server.address, windowSize, retransmissionPolicy.get(),
+                    congestionController.get(), maxAttempts, debug);
+            session.setStats(transportStats);
+            server.session = session;
+            server.closing = false;
+            server.connectDeadline = now + connectTimeoutNanos;
+            try{
+                session.open();
+            } catch (IOException e){
+                session.failed(e);
+            }
+        }
+
+        private void sendWaiting(Server server, long now){
+            while(server.inFlight.size() < maxPipeline && !server.waiting.isEmpty()){
+                Exchange exchange = server.waiting.poll();
+                exchange.requestId = server.session.nextRequestId();
+                try{
+                    server.session.send(exchange.request.encode(exchange.requestId));
+                } catch (IOException e){
+                    server.waiting.addFirst(exchange);
+                    server.session.failed(e);
+                    return;
+                }
+                server.inFlight.add(exchange);
+            }
+        }
+
+        /**
+         * Completes the futures of the responses received so far. A response is matched with its
+         * request by the X-Request-Id it echoes, or else taken to answer the oldest request, as the
+         * server answers in order.
+         */
+        private void receive(Server server){
+            byte[] message;
+            while((message = server.session.nextResponse()) != null){
+                Response response;
+                try{
+                    response = Response.parse(message);
+                } catch (IOException e){
+                    Exchange exchange = server.inFlight.poll();
+                    if(exchange != null){
+                        exchange.future.completeExceptionally(e);
+                    }
+                    continue;
+                }
+                Exchange exchange = take(server.inFlight, response.getRequestId());
+                if(exchange == null){
+                    if(debug){
+                        Log.info(() -> "Dropping unexpected response from " + server.address + ": " + response);
+                    }
+                    continue;
+                }
+                if(!response.isKeepAlive()){
+                    server.closing = true;
+                }
+                exchange.future.complete(response);
+            }
+        }
+
+        private Exchange take(ArrayDeque<Exchange> inFlight, long requestId){
+            if(requestId >= 0){
+                Iterator<Exchange> iterator = inFlight.iterator();
+                while(iterator.hasNext()){
+                    Exchange exchange = iterator.next();
+                    if(exchange.requestId == requestId){
+                        iterator.remove();
+                        return exchange;
+                    }
+                }
+            }
+            return inFlight.poll();
+        }
+
+        /**
+         * Fails the waiting requests past their deadline. A request in flight past its deadline
+         * fails its session, as a late response would no longer match the pipeline.
+         */
+        private void expire(Server server, long now){
+            Iterator<Exchange> iterator = server.waiting.iterator();
+            while(iterator.hasNext()){
+                Exchange exchange = iterator.next();
+                if(now - exchange.deadline >= 0){
+                    iterator.remove();
+                    exchange.future.completeExceptionally(new ConnectionFailedException("No response from "
+                            + server.address + " within " + TimeUnit.NANOSECONDS.toMillis(requestTimeoutNanos) + " ms"));
+                }
+            }
+            ClientSession session = server.session;
+            if(session == null){
+                return;
+            }
+            Exchange oldest = server.inFlight.peek();
+            if(oldest != null && now - oldest.deadline >= 0){
+                session.fail(new ConnectionFailedException("No response from " + server.address + " within "
+                        + TimeUnit.NANOSECONDS.toMillis(requestTimeoutNanos) + " ms"));
+            } else if(!session.isEstablished() && now - server.connectDeadline >= 0){
+                session.fail(new ConnectionFailedException("Handshake with " + server.address + " timed out after "
+                        + TimeUnit.NANOSECONDS.toMillis(connectTimeoutNanos) + " ms"));
+            }
+        }
+
+        /**
+         * Fails the requests sent on the session and closes it. If the handshake itself failed, the
+         * waiting requests fail too, otherwise they are sent on a new session.
+         */
+        private void failSession(Server server, ConnectionFailedException failure){
+            boolean unreachable = server.session == null || !server.session.isEstablished();
+            for(Exchange exchange: server.inFlight){
+                exchange.future.completeExceptionally(failure);
+            }
+            server.inFlight.clear();
+            if(unreachable){
+                for(Exchange exchange: server.waiting){
+                    exchange.future.completeExceptionally(failure);
+                }
+                server.waiting.clear();
+            }
+            closeSession(server);
+        }
+
+        private void closeSession(Server server){
+            if(server.session != null){
+                server.session.close();
+                server.session = null;
+            }
+        }
+
+        private void failSubmitted(){
+            Exchange exchange;
+            while((exchange = submitted.poll()) != null){
+                exchange.future.completeExceptionally(new ConnectionFailedException("Client is closed"));
+            }
+        }
+
+        /**
+         * Fails every pending request and closes the sessions and the loop.
+         */
+        private void shutdown(){
+            ConnectionFailedException failure = new ConnectionFailedException("Client is closed");
+            for(Server server: servers.values()){
+                for(Exchange exchange: server.inFlight){
+                    exchange.future.completeExceptionally(failure);
+                }
+                for(Exchange exchange: server.waiting){
+                    exchange.future.completeExceptionally(failure);
+                }
+                closeSession(server);
+            }
+            servers.clear();
+            failSubmitted();
+            try{
+                loop.close();
+            } catch (IOException e){
+                Log.warn(() -> "Error closing the channel: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Builds an HttpcClient. Every setting has the default of httpc.
+     */
+    public static class Builder {
+        private SocketAddress routerAddress = new InetSocketAddress("localhost", 3000);
+        private int eventLoops = 1;
+        private Supplier<RetransmissionPolicy> retransmissionPolicy = AdaptiveRetransmissionPolicy::new;
+        private Supplier<CongestionController> congestionController = NewRenoCongestionController::new;
+        private int windowSize = ReliableConnection.DEFAULT_WINDOW_SIZE;
+        private int maxAttempts = ReliableConnection.DEFAULT_MAX_TRANSMISSIONS;
+        private long connectTimeout = ClientSession.DEFAULT_CONNECT_TIMEOUT;
+        private long requestTimeout = ClientSession.DEFAULT_REQUEST_TIMEOUT;
+        private long idleTimeout = ConnectionPool.DEFAULT_IDLE_TIMEOUT;
+        private int maxPipeline = 64;
+        private boolean debug;
+        private TransportStats transportStats;
+
+        public Builder setRouterAddress(SocketAddress routerAddress){
+            this.routerAddress = routerAddress;
+            return this;
+        }
+
+        /**
+         * Number of event loops, each with its own thread and channel. Default is 1, which keeps
+         * thousands of requests in flight already, more only help when one thread is saturated.
+         */
+        public Builder setEventLoops(int eventLoops){
+            if(eventLoops < 1){
+                throw new IllegalArgumentException("Invalid number of event loops: " + eventLoops);
+            }
+            this.eventLoops = eventLoops;
+            return this;
+        }
+
+        public Builder setRetransmissionPolicy(Supplier<RetransmissionPolicy> retransmissionPolicy){
+            this.retransmissionPolicy = retransmissionPolicy;
+            return this;
+        }
+
+        public Builder setCongestionController(Supplier<CongestionController> congestionController){
+            this.congestionController = congestionController;
+            return this;
+        }
+
+        public Builder setWindowSize(int windowSize){
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Bounds the retries of every request: each packet is sent at most maxAttempts times, the
+         * handshake gives up after connectTimeout ms and the response after requestTimeout ms.
+         */
+        public Builder setRetryLimits(int maxAttempts, long connectTimeout, long requestTimeout){
+            this.maxAttempts = maxAttempts;
+            this.connectTimeout = connectTimeout;
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * Milliseconds a session with nothing to do stays open. Default is 15000, below the
+         * server's own idle timeout.
+         */
+        public Builder setIdleTimeout(long idleTimeout){
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Most requests sent on a session and not answered yet, the others wait their turn.
+         * Default is 64.
+         */
+        public Builder setMaxPipeline(int maxPipeline){
+            if(maxPipeline < 1){
+                throw new IllegalArgumentException("Invalid pipeline depth: " + maxPipeline);
+            }
+            this.maxPipeline = maxPipeline;
+            return this;
+        }
+
+        public Builder setDebug(boolean debug){
+            this.debug = debug;
+            return this;
+        }
+
+        /**
+         * Counts the packets of every session in transportStats, which may be shared with other
+         * clients. Default is null, counting nothing.
+         */
+        public Builder setTransportStats(TransportStats transportStats){
+            this.transportStats = transportStats;
+            return this;
+        }
+
+        /**
+         * Opens the channels and starts the loop threads.
+         */
+        public HttpcClient create() throws IOException{
+            return new HttpcClient(this);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.comp6411.a3.client;
+
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A request for HttpcClient: a method, the URL of the server and path, extra headers and an
+ * optional body. Immutable, so one Request may be sent any number of times, from any thread.
+ * Host, X-Request-Id and Content-Length are added when the request is encoded.
+ */
+public class Request {
+    static final int DEFAULT_PORT = 8007;
+
+    private final String method;
+    private final URL url;
+    private final List<String> headers;
+    private final ByteBuffer body;
+
+    private Request(Builder builder){
+        this.method = builder.method;
+        this.url = builder.url;
+        this.headers = Collections.unmodifiableList(new ArrayList<>(builder.headers));
+        this.body = builder.body == null ? null : builder.body.asReadOnlyBuffer();
+    }
+
+    public static Builder get(String url) throws MalformedURLException{
+        return new Builder().setMethod("GET").setUrl(url);
+    }
+
+    public static Builder post(String url, byte[] body) throws MalformedURLException{
+        return new Builder().setMethod("POST").setUrl(url).setBody(body);
+    }
+
+    public String getMethod(){
+        return method;
+    }
+
+    public URL getUrl(){
+        return url;
+    }
+
+    public List<String> getHeaders(){
+        return headers;
+    }
+
+    public long getBodyLength(){
+        return body == null ? 0 : body.remaining();
+    }
+
+    /**
+     * The server the request goes to, on port 8007 unless the URL says otherwise.
+     */
+    public InetSocketAddress getServerAddress(){
+        return new InetSocketAddress(url.getHost(), url.getPort() == -1 ? DEFAULT_PORT : url.getPort());
+    }
+
+    /**
+     * The request as buffers to be sent one after the other: the head, tagged with requestId, and
+     * the body if there is one. The body is not copied.
+     */
+    ByteBuffer[] encode(long requestId){
+        String path = url.getPath().isEmpty() ? "/" : url.getPath();
+        StringBuilder head = new StringBuilder();
+        head.append(method).append(' ').append(path);
+        if(url.getQuery() != null){
+            head.append('?').append(url.getQuery());
+        }
+        // HTTP/1.1 keeps the connection open by default, so no Connection header is needed.
+        head.append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(url.getHost()).append("\r\n");
+        head.append("X-Request-Id: ").append(requestId).append("\r\n");
+        for(String header: headers){
+            head.append(header).append("\r\n");
+        }
+        if(body != null){
+            head.append("Content-Length: ").append(body.remaining()).append("\r\n");
+        }
+        head.append("\r\n");
+
+        ByteBuffer encodedHead = ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.UTF_8));
+        return body == null ? new ByteBuffer[]{encodedHead} : new ByteBuffer[]{encodedHead, body.duplicate()};
+    }
+
+    @Override
+    public String toString(){
+        return method + " " + url;
+    }
+
+    /**
+     * Builds a Request, the method defaults to GET.
+     */
+    public static class Builder {
+        private String method = "GET";
+        private URL url;
+        private final List<String> headers = new ArrayList<>();
+        private ByteBuffer body;
+
+        public Builder setMethod(String method){
+            this.method = method.toUpperCase();
+            return this;
+        }
+
+        public Builder setUrl(URL url){
+            this.url = url;
+            return this;
+        }
+
+        public Builder setUrl(String url) throws MalformedURLException{
+            return setUrl(new URL(url));
+        }
+
+        /**
+         * Adds a header in the "Name: value" form.
+         */
+        public Builder addHeader(String header){
+            if(header.indexOf(':') < 0){
+                throw new IllegalArgumentException("Header is not of the form Name: value: " + header);
+            }
+            headers.add(header);
+            return this;
+        }
+
+        public Builder setBody(byte[] body){
+            return setBody(ByteBuffer.wrap(body));
+        }
+
+        /**
+         * Sets the body to the remaining bytes of body, e.g. a mapped file. They are read each time
+         * the request is sent, and must not change in the meantime.
+         */
+        public Builder setBody(ByteBuffer body){
+            this.body = body;
+            return this;
+        }
+
+        public Request create(){
+            if(url == null || url.getHost().isEmpty()){
+                throw new IllegalStateException("A request needs the URL of its server");
+            }
+            return new Request(this);
+        }
+    }
+}
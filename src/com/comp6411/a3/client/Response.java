@@ -0,0 +1,129 @@
+package com.comp6411.a3.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A response received by HttpcClient: its status line, headers and body, parsed from the
+ * message the server sent.
+ */
+public class Response {
+    private final String version;
+    private final int statusCode;
+    private final String reason;
+    private final List<String> headers;
+    private final byte[] body;
+
+    private Response(String version, int statusCode, String reason, List<String> headers, byte[] body){
+        this.version = version;
+        this.statusCode = statusCode;
+        this.reason = reason;
+        this.headers = Collections.unmodifiableList(headers);
+        this.body = body;
+    }
+
+    /**
+     * Parses a whole response message. The body is everything after the blank line ending the head.
+     * @throws IOException if the message does not start with a status line and headers.
+     */
+    static Response parse(byte[] message) throws IOException{
+        int headEnd = -1;
+        for(int i = 0; i + 3 < message.length; i++){
+            if(message[i] == '\r' && message[i + 1] == '\n' && message[i + 2] == '\r' && message[i + 3] == '\n'){
+                headEnd = i;
+                break;
+            }
+        }
+        if(headEnd < 0){
+            throw new IOException("Response without a complete head");
+        }
+        String[] lines = new String(message, 0, headEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] status = lines[0].split(" ", 3);
+        if(status.length < 2 || !status[0].startsWith("HTTP/")){
+            throw new IOException("Malformed status line: " + lines[0]);
+        }
+        int statusCode;
+        try{
+            statusCode = Integer.parseInt(status[1]);
+        } catch (NumberFormatException e){
+            throw new IOException("Malformed status line: " + lines[0]);
+        }
+        List<String> headers = new ArrayList<>();
+        for(int i = 1; i < lines.length; i++){
+            headers.add(lines[i]);
+        }
+        byte[] body = new byte[message.length - headEnd - 4];
+        System.arraycopy(message, headEnd + 4, body, 0, body.length);
+        return new Response(status[0], statusCode, status.length > 2 ? status[2] : "", headers, body);
+    }
+
+    public String getVersion(){
+        return version;
+    }
+
+    public int getStatusCode(){
+        return statusCode;
+    }
+
+    public String getReason(){
+        return reason;
+    }
+
+    /**
+     * The header lines, in the "Name: value" form they were received in.
+     */
+    public List<String> getHeaders(){
+        return headers;
+    }
+
+    /**
+     * The value of the first header called name, ignoring case, or null.
+     */
+    public String getHeader(String name){
+        for(String header: headers){
+            int colon = header.indexOf(':');
+            if(colon == name.length() && header.regionMatches(true, 0, name, 0, colon)){
+                return header.substring(colon + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    public byte[] getBody(){
+        return body;
+    }
+
+    public String getBodyAsString(){
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whether the server keeps the connection open after this response.
+     */
+    public boolean isKeepAlive(){
+        return "keep-alive".equalsIgnoreCase(getHeader("Connection"));
+    }
+
+    /**
+     * The X-Request-Id the server echoed, or -1.
+     */
+    long getRequestId(){
+        String requestId = getHeader("X-Request-Id");
+        if(requestId == null){
+            return -1;
+        }
+        try{
+            return Long.parseLong(requestId);
+        } catch (NumberFormatException e){
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString(){
+        return version + " " + statusCode + " " + reason + ", " + body.length + " bytes";
+    }
+}
@@ -0,0 +1,18 @@
+package com.comp6411.a3.ftpserver;
+
+/**
+ * Lifecycle of a client connection on the server side.
+ */
+public enum ConnectionState {
+    // SYN received and SYN_ACK sent, waiting for the client's ACK or first DATA packet.
+    SYN_RECEIVED,
+    // Handshake complete, requests are being received. Kept alive connections stay here, with any
+    // number of pipelined requests in process.
+    ESTABLISHED,
+    // The last request of the connection was received, its response is not sent yet.
+    CLOSE_WAIT,
+    // The response to the last request is queued, waiting for the client to acknowledge all of it.
+    LAST_ACK,
+    // Response delivered. The entry lingers to absorb retransmissions until it is evicted.
+    CLOSED
+}
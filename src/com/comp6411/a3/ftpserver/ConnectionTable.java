@@ -0,0 +1,162 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.ReliableConnection;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * ConnectionTable tracks the connection of every client, keyed by the packed peer address and
+ * port (see PacketView.getPeerKey). Entries keep their state after the response is delivered so
+ * that retransmitted handshakes and requests are recognised as duplicates instead of being
+ * processed again, and are evicted once the peer has been silent for idleTimeout.
+ * Not thread safe, it is owned by the ServerTransport loop thread.
+ */
+public class ConnectionTable {
+
+    public static class Entry {
+        private final long peer;
+        private final long connectionId;
+        private final ReliableConnection connection;
+        private ConnectionState state = ConnectionState.SYN_RECEIVED;
+        private final long openedAt;
+        private long lastActivity;
+        private RequestReader reader;
+        // Pipelined requests in arrival order: waiting for a worker, then in process until their
+        // response is sent.
+        private final ArrayDeque<IncomingRequest> waiting = new ArrayDeque<>();
+        private final ArrayDeque<IncomingRequest> inProcess = new ArrayDeque<>();
+
+        Entry(long peer, long connectionId, ReliableConnection connection, long now){
+            this.peer = peer;
+            this.connectionId = connectionId;
+            this.connection = connection;
+            this.openedAt = now;
+            this.lastActivity = now;
+        }
+
+        public long getPeer(){
+            return peer;
+        }
+
+        /**
+         * Sequence number of the SYN that opened the connection.
+         */
+        public long getConnectionId(){
+            return connectionId;
+        }
+
+        public ReliableConnection getConnection(){
+            return connection;
+        }
+
+        /**
+         * When the first SYN of the connection was received, in System.nanoTime.
+         */
+        public long getOpenedAt(){
+            return openedAt;
+        }
+
+        public ConnectionState getState(){
+            return state;
+        }
+
+        public void setState(ConnectionState state){
+            this.state = state;
+        }
+
+        public void touch(long now){
+            this.lastActivity = now;
+        }
+
+        public void setReader(RequestReader reader){
+            this.reader = reader;
+            connection.setReceiver(reader);
+        }
+
+        ArrayDeque<IncomingRequest> getWaiting(){
+            return waiting;
+        }
+
+        ArrayDeque<IncomingRequest> getInProcess(){
+            return inProcess;
+        }
+
+        private void close(){
+            connection.close();
+            if(reader != null){
+                // Deletes a partially received upload.
+                reader.abort();
+            }
+            for(IncomingRequest request: waiting){
+                if(request.getUpload() != null){
+                    request.getUpload().abort();
+                }
+            }
+            waiting.clear();
+            state = ConnectionState.CLOSED;
+        }
+    }
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final long idleTimeoutNanos;
+
+    public ConnectionTable(long idleTimeoutNanos){
+        this.idleTimeoutNanos = idleTimeoutNanos;
+    }
+
+    public Entry get(long peer){
+        return entries.get(peer);
+    }
+
+    /**
+     * Registers a new connection in the SYN_RECEIVED state, opened by the SYN numbered connectionId.
+     */
+    public Entry open(long peer, long connectionId, ReliableConnection connection, long now){
+        Entry entry = new Entry(peer, connectionId, connection, now);
+        entries.put(peer, entry);
+        return entry;
+    }
+
+    /**
+     * Removes the entry, e.g. when its peer stopped answering, and releases its buffers.
+     */
+    public void remove(Entry entry){
+        if(entries.remove(entry.peer, entry)){
+            entry.close();
+        }
+    }
+
+    public boolean contains(Entry entry){
+        return entries.get(entry.peer) == entry;
+    }
+
+    public Collection<Entry> entries(){
+        return entries.values();
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * Removes every entry idle for longer than the timeout and releases its buffers.
+     * Returns the number of evicted entries.
+     */
+    public int evictIdle(long now){
+        int evicted = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(iterator.hasNext()){
+            Entry entry = iterator.next();
+            if(now - entry.lastActivity >= idleTimeoutNanos){
+                iterator.remove();
+                entry.close();
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+}
@@ -0,0 +1,206 @@
+package com.comp6411.a3.ftpserver;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ContentCache keeps the encoded GET response bodies of recently served files, so hot files are
+ * served without touching the disk. It is bounded by the total size of the cached bodies and evicts
+ * the least recently used ones first. Bodies larger than a quarter of the capacity are not cached.
+ * Entries are invalidated by name when the server writes a file or the DirectoryIndex sees it
+ * change. A response read before an invalidation may only be added if no invalidation of that path
+ * happened meanwhile, see generation(String), so a slow reader never puts stale content back.
+ * Reads take no lock, they only stamp the entry with its access time.
+ * Thread safe.
+ */
+public class ContentCache implements DirectoryIndex.Listener {
+
+    public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+    // Generations are kept per stripe of paths, so they stay bounded however many names are written.
+    private static final int GENERATION_STRIPES = 256;
+
+    private final long capacity;
+    private final long maxEntrySize;
+    // Eviction frees down to this size, so it runs once per many puts rather than on every one.
+    private final long lowWater;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    // Bumped by invalidateAll, which holds the write lock so no put can slip in behind it.
+    private final AtomicLong epoch = new AtomicLong();
+    private final ReentrantReadWriteLock epochLock = new ReentrantReadWriteLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final byte[] response;
+        volatile long lastAccess;
+        // lastAccess as seen by the evictor, so readers cannot reorder entries in the middle of a sort.
+        long evictionOrder;
+
+        Entry(byte[] response){
+            this.response = response;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    public ContentCache(long capacity){
+        this.capacity = capacity;
+        this.maxEntrySize = capacity / 4;
+        this.lowWater = capacity - capacity / 8;
+    }
+
+    /**
+     * Returns the cached response for the file, or null.
+     */
+    public byte[] get(String name){
+        Entry entry = entries.get(name);
+        if(entry == null){
+            misses.increment();
+            return null;
+        }
+        entry.lastAccess = System.nanoTime();
+        hits.increment();
+        return entry.response;
+    }
+
+    /**
+     * Invalidation count of the path. Read it before reading a file, and pass it to put with the result.
+     */
+    public long generation(String name){
+        return epoch.get() + generations.get(stripe(name));
+    }
+
+    /**
+     * Caches the response unless it is too large, or the path was invalidated since generation
+     * was read.
+     */
+    public void put(String name, byte[] response, long generation){
+        if(response.length > maxEntrySize){
+            return;
+        }
+        epochLock.readLock().lock();
+        try{
+            // compute runs atomically with invalidate of the same name, so the check cannot go stale.
+            entries.compute(name, (key, previous) -> {
+                if(generation(key) != generation){
+                    return previous;
+                }
+                size.addAndGet(response.length - (previous == null ? 0 : previous.response.length));
+                return new Entry(response);
+            });
+        } finally {
+            epochLock.readLock().unlock();
+        }
+        if(size.get() > capacity){
+            evict();
+        }
+    }
+
+    /**
+     * Drops the least recently used entries until the cache is back under the low water mark.
+     */
+    private void evict(){
+        evictionLock.lock();
+        try{
+            if(size.get() <= capacity){
+                return;
+            }
+            List<Map.Entry<String, Entry>> eldest = new ArrayList<>(entries.entrySet());
+            for(Map.Entry<String, Entry> e: eldest){
+                e.getValue().evictionOrder = e.getValue().lastAccess;
+            }
+            eldest.sort(Comparator.comparingLong(e -> e.getValue().evictionOrder));
+            for(Map.Entry<String, Entry> e: eldest){
+                if(size.get() <= lowWater){
+                    break;
+                }
+                if(entries.remove(e.getKey(), e.getValue())){
+                    size.addAndGet(-e.getValue().response.length);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidate(String name){
+        entries.compute(name, (key, removed) -> {
+            generations.incrementAndGet(stripe(key));
+            if(removed != null){
+                size.addAndGet(-removed.response.length);
+            }
+            return null;
+        });
+    }
+
+    public void invalidateAll(){
+        epochLock.writeLock().lock();
+        try{
+            epoch.incrementAndGet();
+            for(String name: entries.keySet()){
+                Entry removed = entries.remove(name);
+                if(removed != null){
+                    size.addAndGet(-removed.response.length);
+                }
+            }
+        } finally {
+            epochLock.writeLock().unlock();
+        }
+    }
+
+    private static int stripe(String name){
+        int h = name.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    @Override
+    public void fileChanged(String name){
+        invalidate(name);
+    }
+
+    @Override
+    public void directoryChanged(){
+        invalidateAll();
+    }
+
+    public long size(){
+        return size.get();
+    }
+
+    public int count(){
+        return entries.size();
+    }
+
+    public long getHits(){
+        return hits.sum();
+    }
+
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    public long getEvictions(){
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString(){
+        return String.format("cache %d files %d/%d bytes, hits=%d misses=%d evictions=%d", count(), size(),
+                capacity, getHits(), getMisses(), getEvictions());
+    }
+}
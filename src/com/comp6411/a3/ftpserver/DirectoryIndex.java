@@ -0,0 +1,226 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * DirectoryIndex keeps the names of the regular files in the served directory in memory, so a
+ * request is resolved with a map lookup instead of listing and scanning the directory.
+ * Files are found case-insensitively by their full name, or by their base name (the part before the
+ * first '.') the way httpfs always resolved "GET /foo" to foo.txt. When several files share a base
+ * name, the alphabetically first one wins.
+ * The index is kept fresh by a WatchService thread. The server also records the files it writes
+ * itself right away, so a GET following a POST never waits for the watch event.
+ * Listeners, like the ContentCache, are told about every file created, modified or deleted.
+ * Lookups are thread safe and may run on any worker.
+ */
+public class DirectoryIndex implements Closeable {
+
+    /**
+     * Notified from the watch thread when files change.
+     */
+    public interface Listener {
+        void fileChanged(String name);
+
+        /**
+         * Events were lost, anything may have changed.
+         */
+        void directoryChanged();
+    }
+
+    private final Path directory;
+    // Lower cased name to actual name.
+    private final ConcurrentHashMap<String, String> byName = new ConcurrentHashMap<>();
+    // Lower cased base name to every actual name having it.
+    private final ConcurrentHashMap<String, NavigableSet<String>> byBaseName = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final WatchService watchService;
+    private final Thread watcher;
+    // Closing the watch service invalidates the key, which is only worth reporting otherwise.
+    private volatile boolean closed;
+
+    private DirectoryIndex(Path directory) throws IOException{
+        this.directory = directory;
+        this.watchService = directory.getFileSystem().newWatchService();
+        try{
+            // Register before the scan so no file created in between is missed.
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            rescan();
+        } catch (IOException | RuntimeException e){
+            try{
+                watchService.close();
+            } catch (IOException closeFailure){
+                e.addSuppressed(closeFailure);
+            }
+            throw e;
+        }
+
+        this.watcher = new Thread(this::watch, "httpfs-directory-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Indexes the directory and starts watching it for changes.
+     */
+    public static DirectoryIndex open(Path directory) throws IOException{
+        if(!Files.isDirectory(directory)){
+            throw new IOException("Not a directory: " + directory);
+        }
+        return new DirectoryIndex(directory);
+    }
+
+    public Path getDirectory(){
+        return directory;
+    }
+
+    public void addListener(Listener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the actual name of the file matching the requested name or base name, ignoring case,
+     * or null if there is none.
+     */
+    public String resolve(String requested){
+        String key = requested.toLowerCase(Locale.ROOT);
+        String name = byName.get(key);
+        if(name != null){
+            return name;
+        }
+        NavigableSet<String> names = byBaseName.get(key);
+        if(names != null){
+            try{
+                return names.first();
+            } catch (NoSuchElementException e){
+                // Emptied concurrently.
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty(){
+        return byName.isEmpty();
+    }
+
+    public int size(){
+        return byName.size();
+    }
+
+    /**
+     * Snapshot of every indexed file name, in no particular order.
+     */
+    public Collection<String> names(){
+        return new ArrayList<>(byName.values());
+    }
+
+    /**
+     * Records a file the server has just written.
+     */
+    public void add(String name){
+        byName.put(name.toLowerCase(Locale.ROOT), name);
+        byBaseName.computeIfAbsent(baseName(name), key -> new ConcurrentSkipListSet<>()).add(name);
+    }
+
+    public void remove(String name){
+        byName.remove(name.toLowerCase(Locale.ROOT), name);
+        byBaseName.computeIfPresent(baseName(name), (key, names) -> {
+            names.remove(name);
+            return names.isEmpty() ? null : names;
+        });
+    }
+
+    @Override
+    public void close() throws IOException{
+        closed = true;
+        watchService.close();
+    }
+
+    private void watch(){
+        try{
+            while(true){
+                WatchKey key = watchService.take();
+                for(WatchEvent<?> event: key.pollEvents()){
+                    if(event.kind() == OVERFLOW){
+                        // Events were lost, start over from the directory itself.
+                        rescan();
+                        for(Listener listener: listeners){
+                            listener.directoryChanged();
+                        }
+                        continue;
+                    }
+                    String changed = event.context().toString();
+                    if(event.kind() == ENTRY_CREATE){
+                        if(Files.isRegularFile(directory.resolve(changed))){
+                            add(changed);
+                        }
+                    } else if(event.kind() == ENTRY_DELETE){
+                        remove(changed);
+                    }
+                    for(Listener listener: listeners){
+                        listener.fileChanged(changed);
+                    }
+                }
+                if(!key.reset()){
+                    if(!closed){
+                        Log.warn(() -> "Directory " + directory + " is no longer accessible, file index frozen.");
+                    }
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e){
+            // Closed with the server.
+        } catch (IOException e){
+            Log.warn(() -> "Error re-indexing " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void rescan() throws IOException{
+        Set<String> found = new HashSet<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)){
+            for(Path path: stream){
+                if(Files.isRegularFile(path)){
+                    found.add(path.getFileName().toString());
+                }
+            }
+        }
+        for(String name: new ArrayList<>(byName.values())){
+            if(!found.contains(name)){
+                remove(name);
+            }
+        }
+        for(String name: found){
+            add(name);
+        }
+    }
+
+    static String baseName(String name){
+        int dot = name.indexOf('.');
+        return (dot < 0 ? name : name.substring(0, dot)).toLowerCase(Locale.ROOT);
+    }
+}
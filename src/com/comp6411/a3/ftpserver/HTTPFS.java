@@ -1,33 +1,161 @@
 package com.comp6411.a3.ftpserver;
 
 
+import com.comp6411.a3.AdaptiveRetransmissionPolicy;
+import com.comp6411.a3.CongestionController;
+import com.comp6411.a3.Log;
+import com.comp6411.a3.Metrics;
+import com.comp6411.a3.NewRenoCongestionController;
 import com.comp6411.a3.Packet;
+import com.comp6411.a3.PacketBufferPool;
+import com.comp6411.a3.ReliableConnection;
 import com.comp6411.a3.RequestParameters;
+import com.comp6411.a3.RetransmissionPolicy;
+import com.comp6411.a3.TransportStats;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 
 public class HTTPFS {
+    // Files larger than this are memory mapped instead of read.
+    public static final long MAP_THRESHOLD = 256 * 1024;
+    private static final long MAX_MAPPING = 1L << 30;
+    // A file is sent as its raw bytes between these two.
+    private static final byte[] FILE_PREFIX = "\n\t\"data\": {\n".getBytes(UTF_8);
+    private static final byte[] FILE_SUFFIX = "\n\t}".getBytes(UTF_8);
+    // Hidden directory inside the served one holding POST bodies while they are received.
+    private static final String UPLOAD_DIRECTORY = ".uploads";
+
     private int port;
     private boolean isVerbose;
     private String directory;
+    private int windowSize = ReliableConnection.DEFAULT_WINDOW_SIZE;
+    private Supplier<RetransmissionPolicy> retransmissionPolicy = AdaptiveRetransmissionPolicy::new;
+    private Supplier<CongestionController> congestionController = NewRenoCongestionController::new;
+
+    private int workerThreads = Runtime.getRuntime().availableProcessors();
+    private int channels = 1;
+    private ExecutorService executor;
+    private DirectoryIndex index;
+    private long cacheCapacity = ContentCache.DEFAULT_CAPACITY;
+    private ContentCache contentCache;
+    private Path uploadDirectory;
+    // Writes the bodies of uploads, so the transport threads never wait on the disk.
+    private ExecutorService uploadWriter;
+    private TransportStats transportStats = new TransportStats();
+    private final ServerStats serverStats = new ServerStats();
+    private long metricsInterval;
+
+    public void setWindowSize(int windowSize){
+        this.windowSize = windowSize;
+    }
+
+    public void setRetransmissionPolicy(Supplier<RetransmissionPolicy> retransmissionPolicy){
+        /**
+         * Sets the factory creating the retransmission policy of every client connection.
+         */
+        this.retransmissionPolicy = retransmissionPolicy;
+    }
+
+    public void setCongestionController(Supplier<CongestionController> congestionController){
+        /**
+         * Sets the factory creating the congestion controller of every client connection.
+         */
+        this.congestionController = congestionController;
+    }
+
+    public void setWorkerThreads(int workerThreads){
+        this.workerThreads = workerThreads;
+    }
 
+    public void setChannels(int channels){
+        /**
+         * Opens this many channels on the server port with SO_REUSEPORT, each served by its own
+         * ServerTransport thread, so the kernel can spread the clients across cores. Datagrams are
+         * spread by their source address and port, and every datagram comes from the router's, so
+         * behind a single router the kernel hashes all of them to the same channel.
+         */
+        if(channels < 1){
+            throw new IllegalArgumentException("Invalid channel count: " + channels);
+        }
+        this.channels = channels;
+    }
+
+    public void setExecutor(ExecutorService executor){
+        /**
+         * Use the given executor for request processing instead of a fixed pool of workerThreads,
+         * e.g. a virtual thread per task executor on a JDK that has them.
+         */
+        this.executor = executor;
+    }
+
+    public void setCacheCapacity(long cacheCapacity){
+        /**
+         * Bytes of GET responses kept in memory, 0 disables the content cache.
+         */
+        this.cacheCapacity = cacheCapacity;
+    }
+
+    public void setTransportStats(TransportStats transportStats){
+        /**
+         * Counts the packets of every client connection in transportStats instead of in this
+         * server's own, null counts nothing.
+         */
+        this.transportStats = transportStats;
+    }
+
+    TransportStats getTransportStats(){
+        return transportStats;
+    }
+
+    public ServerStats getServerStats(){
+        return serverStats;
+    }
+
+    public void setMetricsInterval(long metricsInterval){
+        /**
+         * Prints the transport and server statistics every metricsInterval seconds, 0 never does.
+         */
+        this.metricsInterval = metricsInterval;
+    }
+
+    public ContentCache getContentCache(){
+        return contentCache;
+    }
+
+    Path getUploadDirectory(){
+        return uploadDirectory;
+    }
+
+    Executor getUploadWriter(){
+        return uploadWriter;
+    }
 
     public void createServer(int port, boolean isVerbose, String directory){
         /**
@@ -38,99 +166,328 @@ public class HTTPFS {
          */
         this.port = port;
         this.isVerbose = isVerbose;
-        this.directory = directory;
+        if(isVerbose){
+            // The per request and per connection messages are logged at DEBUG, off the hot path.
+            Log.setLevel(Log.Level.DEBUG);
+        }
+
+        List<DatagramChannel> opened = new ArrayList<>();
+        try(DirectoryIndex index = openDirectory(directory)){
+            if(isVerbose){
+                System.out.println("Indexed " + index.size() + " files in " + directory);
+            }
+            Closeable metricsDump = startMetrics();
+            try{
+                InetSocketAddress address = new InetSocketAddress(this.port);
+                for(int i = 0; i < channels; i++){
+                    DatagramChannel channel = openChannel(address);
+                    opened.add(channel);
+                    // With port 0 the first channel picks the port the others share.
+                    address = (InetSocketAddress) channel.getLocalAddress();
+                }
+                listenClientRequests(opened);
+            } finally {
+                for(DatagramChannel channel: opened){
+                    channel.close();
+                }
+                metricsDump.close();
+            }
+        } catch (IOException e){
+            System.out.println("Trouble creating server socket. Check port number and directory. " + e.getMessage());
+        }
+    }
 
-        try(DatagramChannel channel = DatagramChannel.open()){
-            channel.bind(new InetSocketAddress(this.port));
-            ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_LEN).order(ByteOrder.BIG_ENDIAN);
-            listenClientRequests(channel, buf);
+    private DatagramChannel openChannel(InetSocketAddress address) throws IOException{
+        /**
+         * Opens a channel bound to address, with SO_REUSEPORT if the server has several.
+         */
+        DatagramChannel channel = DatagramChannel.open();
+        try{
+            if(channels > 1){
+                SocketOption<Boolean> reusePort = reusePortOption();
+                if(reusePort == null || !channel.supportedOptions().contains(reusePort)){
+                    throw new IOException("SO_REUSEPORT is not supported, use a single channel.");
+                }
+                channel.setOption(reusePort, true);
+            }
+            channel.bind(address);
         } catch (IOException e){
-            System.out.println("Trouble creating server socket. Check port number.");
+            channel.close();
+            throw e;
         }
+        return channel;
     }
 
-    void listenClientRequests(DatagramChannel channel, ByteBuffer buf){
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption(){
+        /**
+         * StandardSocketOptions.SO_REUSEPORT, looked up by name as it only exists from Java 9 on,
+         * or null on Java 8.
+         */
+        try{
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (ReflectiveOperationException e){
+            return null;
+        }
+    }
+
+    private Closeable startMetrics(){
+        /**
+         * Publishes the statistics of this server through JMX, named after its port, and starts
+         * their periodic dump if one was asked for.
+         */
+        String name = "httpfs-" + this.port;
+        Map<String, Object> sources = new LinkedHashMap<>();
+        try{
+            if(transportStats != null){
+                Metrics.register("TransportStats", name, transportStats);
+            }
+            Metrics.register("ServerStats", name, serverStats);
+        } catch (IllegalArgumentException e){
+            // The statistics are still kept, and dumped if asked for, only not visible through JMX.
+            Log.warn(() -> "Not publishing the statistics through JMX: " + e.getMessage());
+        }
+        if(transportStats != null){
+            sources.put("transport", transportStats);
+        }
+        sources.put("server", serverStats);
+        if(metricsInterval <= 0){
+            return () -> {};
+        }
+        return Metrics.dumpPeriodically(sources, metricsInterval, TimeUnit.SECONDS);
+    }
+
+    DirectoryIndex openDirectory(String directory) throws IOException{
+        /**
+         * Indexes the served directory and sets up the content cache and the upload directory,
+         * without opening any socket, so requests can be handled directly, e.g. by a benchmark.
+         * The caller closes the returned index once done serving.
+         */
+        this.directory = directory;
+        DirectoryIndex index = DirectoryIndex.open(Paths.get(directory));
+        try{
+            this.index = index;
+            this.contentCache = new ContentCache(cacheCapacity);
+            serverStats.setContentCache(contentCache);
+            index.addListener(contentCache);
+            this.uploadDirectory = prepareUploadDirectory(index.getDirectory());
+        } catch (IOException e){
+            index.close();
+            throw e;
+        }
+        return index;
+    }
+
+    private static Path prepareUploadDirectory(Path directory) throws IOException{
+        /**
+         * Creates the directory of temporary uploads, removing what an earlier run left behind.
+         */
+        Path uploads = directory.resolve(UPLOAD_DIRECTORY);
+        Files.createDirectories(uploads);
+        try(DirectoryStream<Path> leftovers = Files.newDirectoryStream(uploads)){
+            for(Path leftover: leftovers){
+                Files.deleteIfExists(leftover);
+            }
+        }
+        return uploads;
+    }
+
+    void listenClientRequests(List<DatagramChannel> channels){
         /**
          * Keep listening for client requests. On connecting with a client, parse the requests,
          * do the required action, and send appropriate response back to client.
+         * Requests are processed on the worker pool while this thread keeps serving the transport
+         * of the first channel, and one more thread per other channel serves its own.
          */
-        Map<Integer, Packet> packetBuffer = new HashMap<>();
         if(isVerbose){
-            System.out.println("Server running on port: " + this.port);
+            System.out.println("Server running on port: " + this.port + " with " + workerThreads + " workers"
+                    + (channels.size() > 1 ? " and " + channels.size() + " channels" : ""));
         }
 
-        while (true){
-            try{
-                buf.clear();
-                SocketAddress router = channel.receive(buf);
-
-                if(router != null){
-                    // Parse a packet from the received raw data.
-                    buf.flip();
-                    Packet packet = Packet.fromBuffer(buf);
-                    buf.flip();
-
-                    // get payload request message as a String
-                    String requestPayload = new String(packet.getPayload(), UTF_8);
+        ExecutorService workers = this.executor != null ? this.executor : Executors.newFixedThreadPool(workerThreads);
+        this.uploadWriter = Executors.newSingleThreadExecutor(task -> new Thread(task, "httpfs-upload-writer"));
+        List<ServerTransport> transports = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        try{
+            for(int i = 1; i < channels.size(); i++){
+                ServerTransport transport = new ServerTransport(this, channels.get(i), workers, this.windowSize,
+                        this.retransmissionPolicy, this.congestionController);
+                Thread thread = new Thread(() -> serve(transport), "httpfs-channel-" + i);
+                transports.add(transport);
+                threads.add(thread);
+                thread.start();
+            }
+            serve(new ServerTransport(this, channels.get(0), workers, this.windowSize, this.retransmissionPolicy,
+                    this.congestionController));
+        } finally {
+            // The other channels stop with the first one, before the executors they use.
+            for(ServerTransport transport: transports){
+                transport.stop();
+            }
+            joinAll(threads);
+            workers.shutdown();
+            uploadWriter.shutdown();
+        }
+    }
 
-                    if(requestPayload.equals("Client handshake request.")){
-                        handleHandshake(packet, channel, router, requestPayload);
-                    } else {
-                        processRequest(packet, channel, router, requestPayload);
-                    }
+    private static void joinAll(List<Thread> threads){
+        boolean interrupted = false;
+        for(Thread thread: threads){
+            while(thread.isAlive()){
+                try{
+                    thread.join();
+                } catch (InterruptedException e){
+                    interrupted = true;
                 }
-            } catch (IOException e){
-                System.out.println("Error in accepting requests from the server socket.");
             }
         }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void serve(ServerTransport transport){
+        try{
+            transport.run();
+        } catch (IOException e){
+            System.out.println("Error in accepting requests from the server socket.");
+        }
+    }
+
+    Response processRequest(IncomingRequest request, long dispatchedAt){
+        /**
+         * Build the response to a parsed request, and count it in the server statistics, its
+         * service time starting at dispatchedAt, when it was handed to the workers.
+         * Called from the worker threads.
+         */
+        Response response = buildResponse(request);
+        String method = request.getError() == null ? request.getParameters().method : null;
+        serverStats.onRequest(method, request.getBodyLength(), response, System.nanoTime() - dispatchedAt);
+        return response;
     }
 
-    void processRequest(Packet packet, DatagramChannel channel, SocketAddress router,
-                        String requestPayload) throws IOException{
-        String[] arr = requestPayload.split("\r\n");
-        String[] methodHeader = arr[0].split(" ");
-        String method = "";
-        String path = "";
-        if(methodHeader.length<3 || (!methodHeader[0].equalsIgnoreCase("get") &&
-                !methodHeader[0].equalsIgnoreCase("post"))){
+    private Response buildResponse(IncomingRequest request){
+        if(request.getError() != null){
             // bad request
-            if(isVerbose){
-                System.out.println("ERROR 400: BAD REQUEST BY THE CLIENT.");
-            }
-            String badRequest = "HTTP/1.1 400 BAD REQUEST";
-            // Date and time
-            DateFormat dateFormat=new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-            Date date=new Date();
-            String dateAndTime = dateFormat.format(date);
-            String responseHeader = badRequest + "\n" + "Server: httpfs" + "\n" + "Date: " + dateAndTime + "\n";
-
-            // send responseHeader to client
-            Packet packet1 = packet.toBuilder().setPayload(responseHeader.getBytes()).create();
-            channel.send(packet1.toBuffer(), router);
-            return;
-        } else {
-            method = methodHeader[0];
-            path = methodHeader[1];
+            Log.debug(() -> "ERROR 400: BAD REQUEST BY THE CLIENT. " + request.getError());
+            return new Response(Response.Status.BAD_REQUEST);
         }
 
-        // Process client request message
-        RequestParameters requestParameters = new RequestParameters(method, path);
-        requestParameters.processPath();
-        requestParameters.processMessage(requestPayload);
-        requestParameters.createURL();
-        if(isVerbose){
-//            requestParameters.printRequestParameters();
+        // The request was parsed as it arrived
+        RequestParameters requestParameters = request.getParameters();
+
+        // Files are sent byte for byte, from the content cache or straight from the disk
+        String fileName = requestedFile(requestParameters);
+        if(fileName != null){
+            Response response = serveFile(fileName);
+            return response != null ? response : new Response(Response.Status.FILE_NOT_FOUND);
+        }
+
+        // The body of a POST to a file was streamed to disk, only move it into place
+        if(request.getUpload() != null){
+            return commitUpload(requestParameters, request.getUpload(), request.getEcho());
+        }
+        // Nowhere to write the body, it is only echoed.
+        requestParameters.postData = request.getEcho();
+        if(requestParameters.method.equals("POST") && requestParameters.file.equals("/")){
+            requestParameters.file = "";
         }
 
         // Process requests based on their type
-        String response = handleClientRequest(requestParameters);
-        if(isVerbose){
-            System.out.println("Response: \n" + response);
+        Response response = handleClientRequest(requestParameters);
+        Log.debug(() -> "Response: " + response);
+        return response;
+    }
+
+    private Response commitUpload(RequestParameters requestParameters, Upload upload, String echo){
+        /**
+         * Renames the uploaded body over the requested file, resolved like the GET path does, or
+         * creates the file with a .txt extension if it has none of ours. The response echoes echo.
+         */
+        String fileName = index.resolve(requestParameters.file);
+        boolean containsFile = fileName != null;
+        if(!containsFile){
+            fileName = requestParameters.file;
+            if(!fileName.contains(".txt") && !fileName.contains(".json") && !fileName.contains(".xml")){
+                fileName += ".txt";
+            }
         }
 
-        // send responseHeader to client
-        Packet packet1 = packet.toBuilder().setPayload(response.getBytes()).create();
-        channel.send(packet1.toBuffer(), router);
+        Response.Status status;
+        try{
+            upload.commit(index.getDirectory().resolve(fileName));
+            index.add(fileName);
+            contentCache.invalidate(fileName);
+            status = containsFile ? Response.Status.OK : Response.Status.NEW_FILE_CREATED;
+        } catch (IOException e){
+            Log.warn(() -> "Exception while writing file: " + e.getMessage());
+            status = Response.Status.ERROR_READING_FILE;
+        }
+        Response.Status written = status;
+        String writtenFile = fileName;
+        Log.debug(() -> "Response: " + written + ", " + upload.getLength() + " bytes written to " + writtenFile);
+
+        return new Response(status, "\"data\": {\n\t" + echo + "}\t");
+    }
+
+    private String requestedFile(RequestParameters requestParameters){
+        /**
+         * Name of the existing file a GET asks for, or null if the response is not a file.
+         */
+        if(!requestParameters.method.equalsIgnoreCase("get") || requestParameters.file.equals("")
+                || requestParameters.file.equals("/")){
+            return null;
+        }
+        return index.resolve(requestParameters.file);
+    }
+
+    private Response serveFile(String fileName){
+        /**
+         * Builds the response carrying the file content unchanged. Files up to MAP_THRESHOLD bytes
+         * are read into one body array kept in the content cache. Larger ones are memory mapped and the
+         * mapping is cut into packets by the connection, so they are never copied on the heap.
+         * POST replaces files by renaming over them, so a mapped file is never truncated under us.
+         * Returns null if the file disappeared since it was resolved.
+         */
+        byte[] cached = contentCache.get(fileName);
+        if(cached != null){
+            Log.debug(() -> "Response for " + fileName + " served from the " + contentCache);
+            return new Response(Response.Status.OK, ByteBuffer.wrap(cached));
+        }
+        long generation = contentCache.generation(fileName);
+
+        try(FileChannel file = FileChannel.open(index.getDirectory().resolve(fileName), StandardOpenOption.READ)){
+            long size = file.size();
+            Log.debug(() -> "Response: " + Response.Status.OK + ", " + fileName + ", " + size + " bytes");
+            if(size > MAP_THRESHOLD){
+                // One mapping is limited to 2 GB.
+                int chunks = (int) ((size + MAX_MAPPING - 1) / MAX_MAPPING);
+                ByteBuffer[] body = new ByteBuffer[chunks + 2];
+                body[0] = ByteBuffer.wrap(FILE_PREFIX);
+                for(int i = 0; i < chunks; i++){
+                    long position = (long) i * MAX_MAPPING;
+                    body[i + 1] = file.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MAX_MAPPING, size - position));
+                }
+                body[chunks + 1] = ByteBuffer.wrap(FILE_SUFFIX);
+                return new Response(Response.Status.OK, body);
+            }
+
+            byte[] body = new byte[FILE_PREFIX.length + (int) size + FILE_SUFFIX.length];
+            System.arraycopy(FILE_PREFIX, 0, body, 0, FILE_PREFIX.length);
+            ByteBuffer content = ByteBuffer.wrap(body, FILE_PREFIX.length, (int) size);
+            while(content.hasRemaining() && file.read(content) >= 0){
+                // read until the whole file is in
+            }
+            System.arraycopy(FILE_SUFFIX, 0, body, FILE_PREFIX.length + (int) size, FILE_SUFFIX.length);
+            contentCache.put(fileName, body, generation);
+            return new Response(Response.Status.OK, ByteBuffer.wrap(body));
+        } catch (NoSuchFileException e){
+            return null;
+        } catch (IOException e){
+            Log.warn(() -> "Exception while reading file.");
+            return new Response(Response.Status.ERROR_READING_FILE);
+        }
     }
 
     void listenClientRequests(ServerSocket serverSocket){
@@ -155,11 +512,6 @@ public class HTTPFS {
                         StandardCharsets.UTF_8);
                 BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
 
-                // get stream to write to the client
-                OutputStreamWriter outputStreamWriter = new OutputStreamWriter(clientServer.getOutputStream(),
-                        StandardCharsets.UTF_8);
-                BufferedWriter bufferedWriter = new BufferedWriter(outputStreamWriter);
-
                 // Read method of communication and the path
                 String clientMessage = bufferedReader.readLine();
 //                System.out.println("First message: " + clientMessage);
@@ -172,15 +524,8 @@ public class HTTPFS {
                     if(isVerbose){
                         System.out.println("ERROR 400: BAD REQUEST BY THE CLIENT.");
                     }
-                    String badRequest = "HTTP/1.1 400 BAD REQUEST";
-                    // Date and time
-                    DateFormat dateFormat=new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-                    Date date=new Date();
-                    String dateAndTime = dateFormat.format(date);
-                    String responseHeader = badRequest + "\n" + "Server: httpfs" + "\n" + "Date: " + dateAndTime + "\n";
-                    bufferedWriter.write(responseHeader);
-                    bufferedWriter.flush();
-                    bufferedWriter.close();
+                    ResponseWriter.write(new Response(Response.Status.BAD_REQUEST), clientServer.getOutputStream());
+                    clientServer.close();
                     continue;
                 }
 
@@ -203,13 +548,12 @@ public class HTTPFS {
                 }
 
                 // Process requests based on their type
-                String response = handleClientRequest(requestParameters);
+                Response response = handleClientRequest(requestParameters);
                 if(isVerbose){
-                    System.out.println("Response: \n" + response);
+                    System.out.println("Response: " + response);
                 }
-                bufferedWriter.write(response);
-                bufferedWriter.flush();
-                bufferedWriter.close();
+                ResponseWriter.write(response, clientServer.getOutputStream());
+                clientServer.close();
 
             } catch (IOException e){
                 System.out.println("Error in accepting requests from the server socket.");
@@ -219,39 +563,23 @@ public class HTTPFS {
         }
     }
 
-    void handleHandshake(Packet packet, DatagramChannel channel, SocketAddress router,
-                         String requestPayload) throws IOException{
-        String response = "Handshake ACK";
-        if(this.isVerbose){
-            System.out.println(requestPayload);
-            System.out.println("Sending handshake ACK");
-        }
-        Packet packet1 = packet.toBuilder().setPayload(response.getBytes()).create();
+    void handleHandshake(Packet packet, DatagramChannel channel, SocketAddress router) throws IOException{
+        /**
+         * Answer a SYN with a SYN_ACK echoing its sequence number.
+         */
+        Log.debug(() -> "Sending SYN_ACK to " + packet.getPeerAddress() + ":" + packet.getPeerPort());
+        Packet packet1 = packet.toBuilder().setType(Packet.SYN_ACK).setPayload(new byte[0]).create();
 
         channel.send(packet1.toBuffer(), router);
     }
 
-    String handleClientRequest(RequestParameters requestParameters){
+    Response handleClientRequest(RequestParameters requestParameters){
         /**
          * Process the client request and prepare appropriate response message.
+         * The status line and headers are added by ResponseWriter.
          */
-        String okStatus = "HTTP/1.1 200 OK";
-        String fileNotFound = "HTTP/1.1 404 FILE NOT FOUND";
-        String errorReadingFile = "HTTP/1.1 405 ERROR READING FILE";
-        String server = "Server: httpfs";
-        String date1 = "Date: ";
-        String contentLength = "Content-Length: ";
-        String connectionStatus = "Connection: close";
-        String accessControlAllowOrigin = "Access-Control-Allow-Origin: *";
-        String accessControlAllowCredentials = "Access-Control-Allow-Credentials: true";
-
         StringBuilder responseBody = new StringBuilder();
-        String response = null;
-
-        // Date and time
-        DateFormat dateFormat=new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-        Date date=new Date();
-        String dateAndTime = dateFormat.format(date);
+        Response.Status status = null;
 
         // add args
         /**hh
@@ -303,28 +631,12 @@ public class HTTPFS {
             // list files or send asked file
             if(requestParameters.file.equals("")){
                 responseBody.append("\n}\n");
-                response = responseBody.toString();
-                String responseHeader = okStatus + "\n" ;
-//                + server + "\n" + date1 + dateAndTime + "\n"
-//                        + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                        accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                response = responseHeader + response;
+                status = Response.Status.OK;
             } else {
                 try{
-                    File file = new File(directory);
-                    List<String> listOfFiles = new ArrayList<>();
-                    for(File f: file.listFiles()){
-                        if(!f.isDirectory())
-                            listOfFiles.add(f.getName());
-                    }
-                    if(listOfFiles.size()==0){
+                    if(index.isEmpty()){
                         responseBody.append("\n}\n");
-                        response = responseBody.toString();
-                        String responseHeader = okStatus + "\n";
-//                        + server + "\n" + date1 + dateAndTime + "\n"
-//                                + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                                accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                        response = responseHeader + response;
+                        status = Response.Status.OK;
                     } else if(requestParameters.file.equals("/")){
                         // send list of files
 //                        responseBody.append("\", \n");
@@ -332,7 +644,7 @@ public class HTTPFS {
 
                         responseBody.append("\t\"files\": {");
                         String comma = "";
-                        for(String s: listOfFiles){
+                        for(String s: index.names()){
                             responseBody.append(comma);
                             responseBody.append("\n\t\t");
                             responseBody.append(s);
@@ -340,93 +652,32 @@ public class HTTPFS {
                         }
                         responseBody.append("\n\t} \n");
 //                        responseBody.append("}\n");
-                        response = responseBody.toString();
-                        String responseHeader = okStatus + "\n" ;
-//                                server + "\n" + date1 + dateAndTime + "\n"
-//                                + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                                accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                        response = responseHeader + response;
+                        status = Response.Status.OK;
                     } else {
-                        // send file content
-                        boolean containsFile = false;
-                        for(String s: listOfFiles){
-                            String[] temp = s.split("[.]");
-                            if(temp[0].equalsIgnoreCase(requestParameters.file)){
-                                containsFile = true;
-                                if(!requestParameters.file.equalsIgnoreCase(s))
-                                    requestParameters.file = s;
-                                break;
-                            }
-                            if(requestParameters.file.equalsIgnoreCase(s)){
-                                containsFile = true;
-                                break;
-                            }
-                        }
-                        if(!containsFile){
+                        // send file content, byte for byte like the transport path does
+                        String fileName = index.resolve(requestParameters.file);
+                        Response response = fileName != null ? serveFile(fileName) : null;
+                        if(response == null){
                             //TODO: Requested file does not exist error
 //                            responseBody.append("\n}\n");
-                            response = responseBody.toString();
-                            String responseHeader = fileNotFound + "\n" ;
-//                                    + server + "\n" + date1 + dateAndTime + "\n"
-//                                    + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                                    accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                            response = responseHeader + response;
-                            return response;
-                        }
-//                        responseBody.append("\", \n");
-                                                responseBody.append("\n");
-
-                        responseBody.append("\t\"data\": {\n");
-                        BufferedReader outputFileReader = new BufferedReader(new FileReader(directory+requestParameters.file));
-                        String line;
-                        while((line = outputFileReader.readLine())!=null){
-                            responseBody.append("\t");
-                            responseBody.append(line);
-                        }
-                        responseBody.append("\n\t}");
-//                        responseBody.append("\n}\n");
-                        String contentType = null;
-                        String contentDisposition = "Content-Disposition: inline";
-                        if(requestParameters.file.contains(".txt")){
-                            contentType = "Content-Type: text";
-                        } else if(requestParameters.file.contains(".json")){
-                            contentType = "Content-Type: application/json";
-                        } else if(requestParameters.file.contains(".xml") || requestParameters.file.contains(".html")){
-                            contentType = "Content-Type: xml/html";
+                            return new Response(Response.Status.FILE_NOT_FOUND, responseBody.toString());
                         }
-                        response = responseBody.toString();
-                        String responseHeader = okStatus + "\n" ;
-//                        + server + "\n" + date1 + dateAndTime + "\n"
-//                                + contentType + "\n" + contentDisposition + "\n" + contentLength + response.length() +
-//                                "\n" + connectionStatus + "\n" + accessControlAllowOrigin + "\n" +
-//                                accessControlAllowCredentials + "\n";
-                        response = responseHeader + response;
+                        return response;
                     }
                 } catch (NullPointerException e) {
                     System.out.println("No files found in the directory.");
                     responseBody.append("\n}\n");
-                    response = responseBody.toString();
-                    String responseHeader = fileNotFound + "\n" + server + "\n" + date1 + dateAndTime + "\n"
-                            + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-                            accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                    response = responseHeader + response;
+                    status = Response.Status.FILE_NOT_FOUND;
 
                 } catch (Exception e) {
                     System.out.println("Exception while reading file.");
                     responseBody.append("\n}\n");
-                    response = responseBody.toString();
-                    String responseHeader = errorReadingFile + "\n" + server + "\n" + date1 + dateAndTime + "\n"
-                            + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-                            accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                    response = responseHeader + response;
+                    status = Response.Status.ERROR_READING_FILE;
                 }
             }
 
         } else {
             // Process post queries
-            String outputFileName = this.directory;
-            BufferedWriter outputFileWriter = null;
-
             // add data
 
             responseBody.append("\"data\": {\n\t");
@@ -481,92 +732,16 @@ public class HTTPFS {
 
             // Add the post data to the file
             if(requestParameters.file.equals("")){
-                response = responseBody.toString();
-                String responseHeader = okStatus + "\n" ;
-//                + server + "\n" + date1 + dateAndTime + "\n"
-//                        + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                        accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                response = responseHeader + response;
+                status = Response.Status.OK;
             } else {
-                try {
-                    File file = new File(directory);
-                    List<String> listOfFiles = new ArrayList<>();
-                    for(File f: file.listFiles()){
-                        if(!f.isDirectory())
-                            listOfFiles.add(f.getName());
-                    }
-
-                    boolean containsFile = false;
-                    for(String s: listOfFiles){
-                        String[] temp = s.split("[.]");
-                        if(temp[0].equalsIgnoreCase(requestParameters.file)){
-                            containsFile = true;
-                            if(!requestParameters.file.equalsIgnoreCase(s))
-                                requestParameters.file = s;
-                            outputFileName += s;
-                            break;
-                        }
-                        if(requestParameters.file.equalsIgnoreCase(s)){
-                            containsFile = true;
-                            outputFileName += s;
-                            break;
-                        }
-                    }
-                    if(!containsFile){
-                        //TODO: Create file and add data
-
-                        if(requestParameters.file.contains(".txt") || requestParameters.file.contains(".json")
-                                || requestParameters.file.contains(".xml")){
-                            outputFileName += requestParameters.file;
-                        } else {
-                            outputFileName += requestParameters.file + ".txt";
-                        }
-                    }
-
-                    // get the FileWriter
-                    File outputFile = new File(outputFileName);
-                    outputFileWriter = new BufferedWriter(new FileWriter(outputFile,false));
-
-                    outputFileWriter.write(requestParameters.postData);
-                    outputFileWriter.flush();
-                    outputFileWriter.close();
-
-                    if(!containsFile){
-                        response = responseBody.toString();
-                        String newFileCreated = "HTTP/1.1 202 NEW FILE CREATED";
-                        String responseHeader = newFileCreated + "\n";
-//                        + server + "\n" + date1 + dateAndTime + "\n"
-//                                + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                                accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                        response = responseHeader + response;
-                    } else {
-                        response = responseBody.toString();
-                        String responseHeader = okStatus + "\n" ;
-//                        + server + "\n" + date1 + dateAndTime + "\n"
-//                                + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                                accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                        response = responseHeader + response;
-                    }
-
-                } catch(NullPointerException e){
-                    System.out.println("No files found in the directory.");
-                    response = responseBody.toString();
-                    String responseHeader = fileNotFound + "\n" ;
-//                    + server + "\n" + date1 + dateAndTime + "\n"
-//                            + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-//                            accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                    response = responseHeader + response;
-                } catch (Exception e){
-                    System.out.println("Exception while reading file.");
-                    response = responseBody.toString();
-                    String responseHeader = errorReadingFile + "\n" + server + "\n" + date1 + dateAndTime + "\n"
-                            + contentLength + response.length() + "\n" + connectionStatus + "\n" +
-                            accessControlAllowOrigin + "\n" + accessControlAllowCredentials + "\n";
-                    response = responseHeader + response;
-                }
+                // Written and renamed into place like a streamed body, so no reader sees a partial file.
+                Upload upload = Upload.create(uploadDirectory, Runnable::run, () -> {});
+                upload.write(ByteBuffer.wrap(requestParameters.postData.getBytes(UTF_8)));
+                upload.finish();
+                return commitUpload(requestParameters, upload, requestParameters.postData);
             }
         }
-        return response;
+        return new Response(status, responseBody.toString());
     }
 
 }
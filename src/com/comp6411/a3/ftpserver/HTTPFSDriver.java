@@ -1,6 +1,8 @@
 package com.comp6411.a3.ftpserver;
 
 
+import com.comp6411.a3.CongestionController;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -42,6 +44,22 @@ public class HTTPFSDriver {
                     inputCommand.remove(0);
                     port = Integer.parseInt(inputCommand.get(0));
                     inputCommand.remove(0);
+                } else if (inputCommand.get(0).equalsIgnoreCase("-t")) {
+                    inputCommand.remove(0);
+                    httpfs.setWorkerThreads(Integer.parseInt(inputCommand.get(0)));
+                    inputCommand.remove(0);
+                } else if (inputCommand.get(0).equalsIgnoreCase("-c")) {
+                    inputCommand.remove(0);
+                    httpfs.setCongestionController(CongestionController.forName(inputCommand.get(0)));
+                    inputCommand.remove(0);
+                } else if (inputCommand.get(0).equalsIgnoreCase("-k")) {
+                    inputCommand.remove(0);
+                    httpfs.setChannels(Integer.parseInt(inputCommand.get(0)));
+                    inputCommand.remove(0);
+                } else if (inputCommand.get(0).equalsIgnoreCase("-m")) {
+                    inputCommand.remove(0);
+                    httpfs.setMetricsInterval(Long.parseLong(inputCommand.get(0)));
+                    inputCommand.remove(0);
                 } else if (inputCommand.get(0).equalsIgnoreCase("-d")) {
                     inputCommand.remove(0);
                     directory = directory + inputCommand.get(0) + "/";
@@ -54,7 +72,9 @@ public class HTTPFSDriver {
         } catch (IOException e){
             System.out.println("Input error.");
         } catch(NumberFormatException e){
-            System.out.println("Invalid command. Port number should be an integer.");
+            System.out.println("Invalid command. Port number, thread and channel counts and metrics interval should be integers.");
+        } catch(IllegalArgumentException e){
+            System.out.println("Invalid command. " + e.getMessage());
         }
     }
 
@@ -79,9 +99,15 @@ public class HTTPFSDriver {
 
     void printHelp(){
         System.out.println("httpfs is a simple file server.\n" +
-                "usage: httpfs [-v] [-p PORT] [-d PATH-TO-DIR]\n" +
+                "usage: httpfs [-v] [-p PORT] [-t THREADS] [-c reno|cubic] [-k CHANNELS] [-m SECONDS] [-d PATH-TO-DIR]\n" +
                 "-v\tPrints debugging messages.\n" +
                 "-p\tSpecifies the port number that the server will listen and serve at. Default is 8080\n" +
+                "-t\tSpecifies the number of worker threads processing requests. Default is the number of cores.\n" +
+                "-c\tSpecifies the congestion control algorithm, reno or cubic. Default is reno.\n" +
+                "-k\tSpecifies the number of channels opened on the port with SO_REUSEPORT, each served by " +
+                "its own thread. Default is 1.\n" +
+                "-m\tPrints the transport and request statistics every SECONDS. They are always " +
+                "published through JMX.\n" +
                 "-d\tSpecifies the directory that the server will use to read/write " +
                 "requested files. Default is the current directory when launching the " +
                 "application.");
@@ -0,0 +1,85 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.RequestParameters;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A request received by the server. The head (request line and headers) is parsed into
+ * RequestParameters, and the body is either streamed into an Upload or dropped, only its first
+ * bytes are kept to be echoed in the response.
+ */
+public class IncomingRequest {
+
+    private final RequestParameters parameters;
+    private final String error;
+    private final byte[] echo;
+    private final long bodyLength;
+    private final Upload upload;
+    // Set on the ServerTransport loop thread once a worker has built it.
+    private Response response;
+
+    IncomingRequest(RequestParameters parameters, String error, byte[] echo, long bodyLength, Upload upload){
+        this.parameters = parameters;
+        this.error = error;
+        this.echo = echo;
+        this.bodyLength = bodyLength;
+        this.upload = upload;
+    }
+
+    public RequestParameters getParameters(){
+        return parameters;
+    }
+
+    /**
+     * Why the request could not be parsed, or null if it is well formed.
+     */
+    public String getError(){
+        return error;
+    }
+
+    /**
+     * Whether the connection stays open for another request once the response is sent. Never after
+     * a malformed request, the next one could not be framed.
+     */
+    public boolean isKeepAlive(){
+        return error == null && parameters.keepAlive;
+    }
+
+    /**
+     * The start of the body, at most RequestReader.ECHO_LIMIT bytes, as text.
+     */
+    public String getEcho(){
+        String text = new String(echo, UTF_8);
+        if(bodyLength > echo.length){
+            text += "\n\t... (" + bodyLength + " bytes)";
+        }
+        return text;
+    }
+
+    public long getBodyLength(){
+        return bodyLength;
+    }
+
+    /**
+     * The X-Request-Id of the request, to be echoed in its response, or null.
+     */
+    public String getRequestId(){
+        return parameters.requestId;
+    }
+
+    Response getResponse(){
+        return response;
+    }
+
+    void setResponse(Response response){
+        this.response = response;
+    }
+
+    /**
+     * The body streamed to disk, or null if it was not a POST to a file.
+     */
+    public Upload getUpload(){
+        return upload;
+    }
+}
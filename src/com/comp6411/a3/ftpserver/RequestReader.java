@@ -0,0 +1,160 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.MessageReceiver;
+import com.comp6411.a3.RequestParameters;
+import com.comp6411.a3.RequestParser;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * RequestReader turns the packets of one connection into IncomingRequests as they arrive.
+ * The head is parsed in place by a RequestParser as its bytes are delivered. The body of a POST to
+ * a file is then written straight to an Upload, and only its first ECHO_LIMIT bytes are kept for
+ * the response, so an upload of any size takes constant memory. While the upload is backlogged the
+ * reader is not ready, and the connection holds its segments back until onUploadDrained has run.
+ * A request ends after Content-Length body bytes, or with the message for a POST without one.
+ * Runs on the ServerTransport loop thread.
+ */
+public class RequestReader implements MessageReceiver {
+    public static final int ECHO_LIMIT = 4096;
+
+    private final Path uploadDirectory;
+    private final Executor uploadWriter;
+    private final Consumer<IncomingRequest> onRequest;
+    private final Runnable onUploadDrained;
+
+    private final RequestParser parser = new RequestParser();
+    private final byte[] echo = new byte[ECHO_LIMIT];
+    private int echoLength;
+    private Upload upload;
+
+    /**
+     * onUploadDrained is run on the upload writer thread when an upload stops being backlogged, and
+     * must get the connection's held back segments delivered again.
+     */
+    public RequestReader(Path uploadDirectory, Executor uploadWriter, Consumer<IncomingRequest> onRequest,
+                         Runnable onUploadDrained){
+        this.uploadDirectory = uploadDirectory;
+        this.uploadWriter = uploadWriter;
+        this.onRequest = onRequest;
+        this.onUploadDrained = onUploadDrained;
+        // The parameters are handed to a worker with the request, each request gets its own.
+        parser.reset(new RequestParameters());
+    }
+
+    @Override
+    public void onData(ByteBuffer data){
+        while(data.hasRemaining()){
+            RequestParser.State state = parser.getState();
+            if(state == RequestParser.State.REQUEST_LINE || state == RequestParser.State.HEADERS){
+                state = parser.parse(data);
+                if(state == RequestParser.State.BODY){
+                    startBody();
+                }
+            }
+            if(state == RequestParser.State.ERROR){
+                // The rest of the message cannot be framed, it is dropped.
+                data.position(data.limit());
+                return;
+            }
+            if(state == RequestParser.State.BODY){
+                int limit = parser.bodySlice(data);
+                readBody(data);
+                data.limit(limit);
+                state = parser.getState();
+            }
+            if(state == RequestParser.State.COMPLETE){
+                // Any bytes left in data start the next request.
+                complete();
+            }
+        }
+    }
+
+    @Override
+    public boolean isReady(){
+        return upload == null || !upload.isBacklogged();
+    }
+
+    @Override
+    public void onMessageEnd(){
+        RequestParser.State state = parser.endOfMessage();
+        if(state == RequestParser.State.COMPLETE || state == RequestParser.State.ERROR){
+            complete();
+        }
+    }
+
+    /**
+     * Drops a partially received upload, e.g. when the connection is evicted.
+     */
+    public void abort(){
+        if(upload != null){
+            upload.abort();
+            upload = null;
+        }
+    }
+
+    /**
+     * Opens an upload if the head is a POST to a file.
+     */
+    private void startBody(){
+        RequestParameters requestParameters = parser.getRequest();
+        if(requestParameters.method.equals("POST") && !requestParameters.file.equals("")
+                && !requestParameters.file.equals("/")){
+            upload = Upload.create(uploadDirectory, uploadWriter, onUploadDrained);
+        }
+    }
+
+    private void readBody(ByteBuffer data){
+        if(echoLength < ECHO_LIMIT){
+            int length = Math.min(ECHO_LIMIT - echoLength, data.remaining());
+            // Copied through a duplicate, data itself is still written to the upload below.
+            data.duplicate().get(echo, echoLength, length);
+            echoLength += length;
+        }
+        if(upload != null){
+            upload.write(data);
+        } else {
+            data.position(data.limit());
+        }
+    }
+
+    private void complete(){
+        if(parser.getError() != null){
+            // A truncated body is not committed.
+            abort();
+        } else if(upload != null){
+            upload.finish();
+        }
+        int kept = parser.getBodyReceived() > echoLength ? characterBoundary(echo, echoLength) : echoLength;
+        byte[] echoed = new byte[kept];
+        System.arraycopy(echo, 0, echoed, 0, kept);
+        IncomingRequest request = new IncomingRequest(parser.getRequest(), parser.getError(), echoed,
+                parser.getBodyReceived(), upload);
+
+        parser.reset(new RequestParameters());
+        echoLength = 0;
+        upload = null;
+        onRequest.accept(request);
+    }
+
+    /**
+     * Length of the UTF-8 text in bytes[0, length) without the last character if the echo limit
+     * cut it, so the echo never ends with half a character.
+     */
+    static int characterBoundary(byte[] bytes, int length){
+        int start = length;
+        // At most three continuation bytes follow the first byte of a character.
+        while(start > 0 && length - start < 3 && (bytes[start - 1] & 0xC0) == 0x80){
+            start--;
+        }
+        if(start == 0){
+            return length;
+        }
+        int first = bytes[start - 1] & 0xFF;
+        int characterLength = first >= 0xF0 ? 4 : first >= 0xE0 ? 3 : first >= 0xC0 ? 2 : 1;
+        return length - (start - 1) < characterLength ? start - 1 : length;
+    }
+}
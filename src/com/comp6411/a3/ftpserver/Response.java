@@ -0,0 +1,89 @@
+package com.comp6411.a3.ftpserver;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A response of HTTPFS: its status and its body, as buffers to be sent one after the other.
+ * The head is only encoded when the response is written, see ResponseWriter.
+ */
+public class Response {
+
+    /**
+     * The statuses HTTPFS answers with, their status lines encoded once.
+     */
+    public enum Status {
+        OK("HTTP/1.1 200 OK"),
+        NEW_FILE_CREATED("HTTP/1.1 202 NEW FILE CREATED"),
+        BAD_REQUEST("HTTP/1.1 400 BAD REQUEST"),
+        FILE_NOT_FOUND("HTTP/1.1 404 FILE NOT FOUND"),
+        ERROR_READING_FILE("HTTP/1.1 405 ERROR READING FILE"),
+        INTERNAL_SERVER_ERROR("HTTP/1.1 500 INTERNAL SERVER ERROR");
+
+        private final String line;
+        private final byte[] encoded;
+
+        Status(String line){
+            this.line = line;
+            this.encoded = (line + "\r\n").getBytes(ISO_8859_1);
+        }
+
+        /**
+         * The status line followed by CRLF.
+         */
+        byte[] encoded(){
+            return encoded;
+        }
+
+        @Override
+        public String toString(){
+            return line;
+        }
+    }
+
+    private static final ByteBuffer[] EMPTY = new ByteBuffer[0];
+
+    private final Status status;
+    private final ByteBuffer[] body;
+    private final long contentLength;
+
+    public Response(Status status, ByteBuffer... body){
+        this.status = status;
+        this.body = body;
+        long length = 0;
+        for(ByteBuffer part: body){
+            length += part.remaining();
+        }
+        this.contentLength = length;
+    }
+
+    public Response(Status status, String body){
+        this(status, ByteBuffer.wrap(body.getBytes(UTF_8)));
+    }
+
+    public Response(Status status){
+        this(status, EMPTY);
+    }
+
+    public Status getStatus(){
+        return status;
+    }
+
+    /**
+     * The body buffers. Their remaining bytes are the body, and they must not be modified.
+     */
+    public ByteBuffer[] getBody(){
+        return body;
+    }
+
+    public long getContentLength(){
+        return contentLength;
+    }
+
+    @Override
+    public String toString(){
+        return status + ", " + contentLength + " bytes";
+    }
+}
@@ -0,0 +1,141 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.ReliableConnection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * ResponseWriter encodes the head of a Response and hands it with the body to the connection.
+ * Every constant part of the head is encoded once. Per response only the Date, which is cached
+ * for the current second, and the Content-Length digits are copied into one exactly sized head
+ * array, and the body buffers are cut into packets by the connection without being copied.
+ * Thread safe.
+ */
+public class ResponseWriter {
+
+    private static final byte[] SERVER_DATE = "Server: httpfs\r\nDate: ".getBytes(ISO_8859_1);
+    private static final byte[] CONTENT_LENGTH = "\r\nContent-Length: ".getBytes(ISO_8859_1);
+    private static final byte[] REQUEST_ID = "\r\nX-Request-Id: ".getBytes(ISO_8859_1);
+    private static final byte[] CONNECTION_CLOSE = "\r\nConnection: close\r\n\r\n".getBytes(ISO_8859_1);
+    private static final byte[] CONNECTION_KEEP_ALIVE = "\r\nConnection: keep-alive\r\n\r\n".getBytes(ISO_8859_1);
+
+    private static final DateTimeFormatter RFC_1123 = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    // Encoded Date of the second it was formatted for, replaced by the first response of the next second.
+    private static volatile CachedDate date = new CachedDate(Long.MIN_VALUE, new byte[0]);
+
+    private ResponseWriter(){
+    }
+
+    /**
+     * Queues the whole response on the connection. The caller ends the message, and keeps the
+     * connection open for the next request if keepAlive is set. requestId, if not null, is echoed
+     * for the client to match the response with its request.
+     */
+    public static void write(Response response, ReliableConnection connection, boolean keepAlive, String requestId)
+            throws IOException{
+        connection.write(ByteBuffer.wrap(head(response, keepAlive, requestId)));
+        for(ByteBuffer part: response.getBody()){
+            connection.write(part.duplicate());
+        }
+    }
+
+    /**
+     * Writes the whole response to a stream, for the TCP server, which closes it afterwards.
+     */
+    public static void write(Response response, OutputStream out) throws IOException{
+        out.write(head(response, false, null));
+        for(ByteBuffer part: response.getBody()){
+            ByteBuffer data = part.duplicate();
+            if(data.hasArray()){
+                out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            } else {
+                byte[] chunk = new byte[8192];
+                while(data.hasRemaining()){
+                    int length = Math.min(chunk.length, data.remaining());
+                    data.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * The status line and headers of response, ending with the blank line.
+     */
+    public static byte[] head(Response response, boolean keepAlive, String requestId){
+        byte[] status = response.getStatus().encoded();
+        byte[] now = currentDate();
+        long contentLength = response.getContentLength();
+        int digits = digits(contentLength);
+        int idLength = requestId == null ? 0 : REQUEST_ID.length + requestId.length();
+        byte[] connection = keepAlive ? CONNECTION_KEEP_ALIVE : CONNECTION_CLOSE;
+
+        byte[] head = new byte[status.length + SERVER_DATE.length + now.length + CONTENT_LENGTH.length + digits
+                + idLength + connection.length];
+        int position = put(status, head, 0);
+        position = put(SERVER_DATE, head, position);
+        position = put(now, head, position);
+        position = put(CONTENT_LENGTH, head, position);
+        for(int i = position + digits - 1; i >= position; i--){
+            head[i] = (byte) ('0' + contentLength % 10);
+            contentLength /= 10;
+        }
+        position += digits;
+        if(requestId != null){
+            position = put(REQUEST_ID, head, position);
+            // Header values are ISO-8859-1, other characters and controls, CR and LF included, become '?'.
+            for(int i = 0; i < requestId.length(); i++){
+                char c = requestId.charAt(i);
+                head[position++] = (byte) (c <= 0xFF && c >= ' ' && c != 0x7F ? c : '?');
+            }
+        }
+        put(connection, head, position);
+        return head;
+    }
+
+    /**
+     * The RFC 1123 date of the current second, formatted at most once per second.
+     */
+    static byte[] currentDate(){
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate cached = date;
+        if(cached.second != second){
+            // Threads racing here format the same value, any of them may win.
+            cached = new CachedDate(second, RFC_1123.format(Instant.ofEpochSecond(second)).getBytes(ISO_8859_1));
+            date = cached;
+        }
+        return cached.encoded;
+    }
+
+    private static int put(byte[] source, byte[] target, int position){
+        System.arraycopy(source, 0, target, position, source.length);
+        return position + source.length;
+    }
+
+    private static int digits(long value){
+        int digits = 1;
+        while(value >= 10){
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static final class CachedDate {
+        final long second;
+        final byte[] encoded;
+
+        CachedDate(long second, byte[] encoded){
+            this.second = second;
+            this.encoded = encoded;
+        }
+    }
+}
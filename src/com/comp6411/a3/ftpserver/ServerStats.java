@@ -0,0 +1,138 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerStats counts the requests HTTPFS served: their service time by method, their statuses,
+ * the body bytes read and written, and the hits of the content cache.
+ * Updated from every worker thread, so the counters are LongAdders.
+ */
+public class ServerStats implements ServerStatsMXBean {
+
+    private final LatencyHistogram getServiceTime = new LatencyHistogram();
+    private final LatencyHistogram postServiceTime = new LatencyHistogram();
+    private final LatencyHistogram otherServiceTime = new LatencyHistogram();
+    private final LongAdder[] statusCounts = new LongAdder[Response.Status.values().length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private volatile ContentCache contentCache;
+
+    public ServerStats(){
+        for(int i = 0; i < statusCounts.length; i++){
+            statusCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Reports the hits of contentCache, which counts them itself.
+     */
+    void setContentCache(ContentCache contentCache){
+        this.contentCache = contentCache;
+    }
+
+    /**
+     * Records one request, with a null method if it could not be parsed.
+     */
+    void onRequest(String method, long bodyLength, Response response, long nanos){
+        if("GET".equals(method)){
+            getServiceTime.record(nanos);
+        } else if("POST".equals(method)){
+            postServiceTime.record(nanos);
+        } else {
+            otherServiceTime.record(nanos);
+        }
+        statusCounts[response.getStatus().ordinal()].increment();
+        bytesRead.add(bodyLength);
+        bytesWritten.add(response.getContentLength());
+    }
+
+    @Override
+    public long getRequests(){
+        long requests = 0;
+        for(LongAdder count: statusCounts){
+            requests += count.sum();
+        }
+        return requests;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCounts(){
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for(Response.Status status: Response.Status.values()){
+            counts.put(status.toString(), statusCounts[status.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getGetServiceTime(){
+        return getServiceTime.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getPostServiceTime(){
+        return postServiceTime.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getOtherServiceTime(){
+        return otherServiceTime.snapshot();
+    }
+
+    /**
+     * Bytes of request bodies received.
+     */
+    @Override
+    public long getBytesRead(){
+        return bytesRead.sum();
+    }
+
+    /**
+     * Bytes of response bodies sent, heads excluded.
+     */
+    @Override
+    public long getBytesWritten(){
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getCacheHits(){
+        ContentCache cache = contentCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    @Override
+    public long getCacheMisses(){
+        ContentCache cache = contentCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    @Override
+    public long getCacheEvictions(){
+        ContentCache cache = contentCache;
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder statuses = new StringBuilder();
+        for(Response.Status status: Response.Status.values()){
+            long count = statusCounts[status.ordinal()].sum();
+            if(count > 0){
+                String line = status.toString();
+                statuses.append(statuses.length() == 0 ? "" : ", ").append(line.substring(line.indexOf(' ') + 1))
+                        .append(" x").append(count);
+            }
+        }
+        return getRequests() + " requests (" + statuses + "), read " + getBytesRead() + " bytes, wrote "
+                + getBytesWritten() + " bytes, cache " + getCacheHits() + " hits " + getCacheMisses() + " misses "
+                + getCacheEvictions() + " evictions\n"
+                + "  GET   " + getServiceTime + "\n"
+                + "  POST  " + postServiceTime + "\n"
+                + "  other " + otherServiceTime;
+    }
+}
@@ -0,0 +1,38 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.LatencyHistogram;
+
+import java.util.Map;
+
+/**
+ * The counters of a ServerStats as seen through JMX.
+ */
+public interface ServerStatsMXBean {
+
+    long getRequests();
+
+    /**
+     * Responses sent, by status line.
+     */
+    Map<String, Long> getStatusCounts();
+
+    /**
+     * Time from a request being handed to the worker pool to its response being built, in
+     * nanoseconds. The wait for a free worker is included.
+     */
+    LatencyHistogram.Snapshot getGetServiceTime();
+
+    LatencyHistogram.Snapshot getPostServiceTime();
+
+    LatencyHistogram.Snapshot getOtherServiceTime();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getCacheEvictions();
+}
@@ -0,0 +1,418 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.CongestionController;
+import com.comp6411.a3.ConnectionFailedException;
+import com.comp6411.a3.Log;
+import com.comp6411.a3.Packet;
+import com.comp6411.a3.PacketBufferPool;
+import com.comp6411.a3.PacketView;
+import com.comp6411.a3.ReliableConnection;
+import com.comp6411.a3.RetransmissionPolicy;
+import com.comp6411.a3.TransportStats;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.nio.channels.SelectionKey.OP_READ;
+
+/**
+ * ServerTransport runs the UDP receive loop of HTTPFS.
+ * Datagrams are demultiplexed by the peer address and port written in the packet header into a
+ * ConnectionTable, where every peer goes through the SYN, request, response states, and back to
+ * request for every further request of a kept alive connection. Only the loop thread touches that
+ * state: complete requests are handed to the worker pool, and workers hand the responses back
+ * through a task queue, so one slow disk read never holds up the other clients.
+ * A kept alive connection may pipeline requests without waiting for their responses. They are
+ * processed concurrently and their responses sent in request order, each echoing X-Request-Id.
+ * Kept alive connections are closed when their client has been silent for the idle timeout.
+ * Diagnostics go through Log at the DEBUG level, which HTTPFS enables when verbose.
+ * HTTPFS may run several ServerTransports, one per channel bound to the same port, see
+ * HTTPFS.setChannels. Each owns its connections, they only share the workers.
+ */
+public class ServerTransport {
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+    // Longest select when no retransmission timer is pending.
+    private static final long IDLE_POLL_INTERVAL = 1000;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Pipelined requests of one connection processed at the same time.
+    private static final int MAX_IN_PROCESS = 8;
+    // Datagrams received back to back before any of them is handled.
+    private static final int RECEIVE_BATCH = 32;
+    // Packets of unknown peers may arrive at the packet rate, e.g. after a server restart.
+    private static final Log.Sampler UNKNOWN_PEER_SAMPLER = new Log.Sampler(100);
+    private static final Log.Sampler PACKET_ERROR_SAMPLER = new Log.Sampler(100);
+    private static final Log.Sampler LOOP_ERROR_SAMPLER = new Log.Sampler(100);
+
+    private final HTTPFS server;
+    private final DatagramChannel channel;
+    private final ExecutorService workers;
+    private final int windowSize;
+    private final Supplier<RetransmissionPolicy> retransmissionPolicy;
+    private final Supplier<CongestionController> congestionController;
+
+    private final ConnectionTable connections;
+    private long lastSweep = System.nanoTime();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PacketView packet = new PacketView();
+    private final List<ConnectionTable.Entry> failed = new ArrayList<>();
+    private Selector selector;
+
+    public ServerTransport(HTTPFS server, DatagramChannel channel, ExecutorService workers,
+                           int windowSize, Supplier<RetransmissionPolicy> retransmissionPolicy,
+                           Supplier<CongestionController> congestionController){
+        this(server, channel, workers, windowSize, retransmissionPolicy, congestionController, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public ServerTransport(HTTPFS server, DatagramChannel channel, ExecutorService workers,
+                           int windowSize, Supplier<RetransmissionPolicy> retransmissionPolicy,
+                           Supplier<CongestionController> congestionController, long idleTimeout){
+        this.server = server;
+        this.channel = channel;
+        this.workers = workers;
+        this.windowSize = windowSize;
+        this.retransmissionPolicy = retransmissionPolicy;
+        this.congestionController = congestionController;
+        this.connections = new ConnectionTable(TimeUnit.MILLISECONDS.toNanos(idleTimeout));
+    }
+
+    /**
+     * Runs the loop on the calling thread until the channel is closed.
+     */
+    public void run() throws IOException{
+        PacketBufferPool pool = PacketBufferPool.shared();
+        ByteBuffer[] batch = new ByteBuffer[RECEIVE_BATCH];
+        SocketAddress[] senders = new SocketAddress[RECEIVE_BATCH];
+        for(int i = 0; i < batch.length; i++){
+            batch[i] = pool.acquire();
+        }
+        try(Selector selector = Selector.open()){
+            this.selector = selector;
+            channel.configureBlocking(false);
+            channel.register(selector, OP_READ);
+
+            while(channel.isOpen()){
+                try{
+                    selector.select(nextTimeout());
+                    selector.selectedKeys().clear();
+
+                    runTasks();
+                    receiveAll(batch, senders);
+                    serviceConnections();
+                } catch (IOException e){
+                    Log.warn(() -> "Error in accepting requests from the server socket: " + e.getMessage());
+                } catch (RuntimeException e){
+                    // A bug hit by one client or task must not stop the loop serving all the others.
+                    TransportStats stats = server.getTransportStats();
+                    if(stats != null){
+                        stats.onLoopError();
+                    }
+                    Log.warn(LOOP_ERROR_SAMPLER, () -> "Error in the server loop: " + e);
+                }
+            }
+        } finally {
+            for(ByteBuffer buf: batch){
+                pool.release(buf);
+            }
+        }
+    }
+
+    /**
+     * Closes the channel, so run returns. Safe to call from any thread.
+     */
+    public void stop(){
+        try{
+            channel.close();
+        } catch (IOException e){
+            Log.warn(() -> "Error closing the server channel: " + e.getMessage());
+        }
+        Selector selector = this.selector;
+        if(selector != null){
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Receives every pending datagram, a batch of them at a time: the receive calls of a batch
+     * run back to back, then its packets are handled. Each receive is still one system call, the
+     * JDK has no recvmmsg, and sends are not batched at all.
+     */
+    private void receiveAll(ByteBuffer[] batch, SocketAddress[] senders) throws IOException{
+        int received;
+        do{
+            received = 0;
+            while(received < batch.length){
+                ByteBuffer buf = batch[received];
+                buf.clear();
+                SocketAddress router = channel.receive(buf);
+                if(router == null){
+                    break;
+                }
+                buf.flip();
+                senders[received++] = router;
+            }
+            for(int i = 0; i < received; i++){
+                try{
+                    receive(batch[i], senders[i]);
+                } catch (IOException | RuntimeException e){
+                    // A malformed datagram, or an answer that could not be sent, only costs itself.
+                    TransportStats stats = server.getTransportStats();
+                    if(stats != null){
+                        stats.onPacketError();
+                    }
+                    Log.warn(PACKET_ERROR_SAMPLER, () -> "Dropping a datagram: " + e.getMessage());
+                }
+                senders[i] = null;
+            }
+        } while(received == batch.length);
+    }
+
+    /**
+     * Handles one datagram received from router, read in place from buf.
+     */
+    private void receive(ByteBuffer buf, SocketAddress router) throws IOException{
+        packet.wrap(buf);
+        long peer = packet.getPeerKey();
+        long now = System.nanoTime();
+        ConnectionTable.Entry entry = connections.get(peer);
+
+        if(packet.getType() == Packet.SYN){
+            long connectionId = packet.getSequenceNumber();
+            if(entry != null && entry.getConnectionId() != connectionId){
+                // Ids count upwards per client port: a newer one is a new session of that
+                // client, an older one a stale duplicate.
+                if((int) (connectionId - entry.getConnectionId()) < 0){
+                    return;
+                }
+                connections.remove(entry);
+                entry = null;
+            }
+            if(entry == null){
+                InetAddress peerAddress = packet.getPeerAddress();
+                int peerPort = packet.getPeerPort();
+                ReliableConnection connection = new ReliableConnection(channel, router,
+                        peerAddress, peerPort, windowSize, retransmissionPolicy.get(),
+                        congestionController.get());
+                connection.setStats(server.getTransportStats());
+                entry = connections.open(peer, connectionId, connection, now);
+                ConnectionTable.Entry opened = entry;
+                opened.setReader(new RequestReader(server.getUploadDirectory(), server.getUploadWriter(),
+                        request -> onRequest(opened, request), () -> execute(() -> resumeDelivery(opened))));
+                Log.debug(() -> "Connection opened by " + peerAddress + ":" + peerPort);
+            }
+            // A retransmitted SYN only gets its SYN_ACK again.
+            entry.touch(now);
+            server.handleHandshake(packet.toPacket(), channel, router);
+            return;
+        }
+
+        if(entry == null){
+            Log.debug(UNKNOWN_PEER_SAMPLER, () -> "Dropping packet from unknown peer " + packet);
+            return;
+        }
+        entry.touch(now);
+
+        if(entry.getState() == ConnectionState.SYN_RECEIVED){
+            // The handshake ACK may be lost, the first DATA packet completes the handshake as well.
+            if(packet.getType() == Packet.ACK && packet.getSequenceNumber() == 0){
+                establish(entry, now);
+                return;
+            }
+            if(packet.getType() == Packet.DATA || packet.getType() == Packet.FIN){
+                establish(entry, now);
+            }
+        }
+
+        // Requests are streamed to the entry's RequestReader, which calls onRequest.
+        entry.getConnection().handle(packet);
+    }
+
+    private void establish(ConnectionTable.Entry entry, long now){
+        entry.setState(ConnectionState.ESTABLISHED);
+        TransportStats stats = server.getTransportStats();
+        if(stats != null){
+            stats.onHandshake(now - entry.getOpenedAt());
+        }
+    }
+
+    /**
+     * Called by the RequestReader of entry once a whole request has been received. Pipelined
+     * requests are accepted while the connection is kept alive, and queued in arrival order.
+     */
+    private void onRequest(ConnectionTable.Entry entry, IncomingRequest request){
+        if(entry.getState() == ConnectionState.ESTABLISHED){
+            if(!request.isKeepAlive()){
+                // The last request of the connection, the ones after it are ignored.
+                entry.setState(ConnectionState.CLOSE_WAIT);
+            }
+            entry.getWaiting().add(request);
+            dispatchWaiting(entry);
+            return;
+        }
+        Log.debug(() -> "Ignoring extra request on a connection in state " + entry.getState());
+        if(request.getUpload() != null){
+            request.getUpload().abort();
+        }
+    }
+
+    /**
+     * Delivers the segments the connection of entry held back while its upload was backlogged.
+     */
+    private void resumeDelivery(ConnectionTable.Entry entry){
+        if(!connections.contains(entry)){
+            return;
+        }
+        try{
+            entry.getConnection().resumeDelivery();
+        } catch (IOException e){
+            Log.warn(() -> "Error resuming an upload: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hands waiting requests of entry to the workers, at most MAX_IN_PROCESS at once so that one
+     * client pipelining many requests does not hold up the others.
+     */
+    private void dispatchWaiting(ConnectionTable.Entry entry){
+        while(entry.getInProcess().size() < MAX_IN_PROCESS && !entry.getWaiting().isEmpty()){
+            IncomingRequest request = entry.getWaiting().poll();
+            entry.getInProcess().add(request);
+            dispatch(entry, request);
+        }
+    }
+
+    /**
+     * Processes the request on a worker and hands the response back to the loop thread. A request
+     * whose processing fails still gets a response, a 500, or it would hold up the responses
+     * pipelined after it.
+     */
+    private void dispatch(ConnectionTable.Entry entry, IncomingRequest request){
+        long dispatchedAt = System.nanoTime();
+        try{
+            workers.execute(() -> {
+                Response processed;
+                try{
+                    processed = server.processRequest(request, dispatchedAt);
+                } catch (RuntimeException e){
+                    Log.warn(() -> "Error processing a request: " + e);
+                    if(request.getUpload() != null){
+                        request.getUpload().abort();
+                    }
+                    processed = new Response(Response.Status.INTERNAL_SERVER_ERROR);
+                }
+                Response response = processed;
+                execute(() -> {
+                    if(!connections.contains(entry)){
+                        // Evicted while the request was processed, the client is gone.
+                        return;
+                    }
+                    request.setResponse(response);
+                    sendResponses(entry);
+                    dispatchWaiting(entry);
+                });
+            });
+        } catch (RejectedExecutionException e){
+            Log.warn(() -> "Server is shutting down, request dropped.");
+            if(request.getUpload() != null){
+                request.getUpload().abort();
+            }
+        }
+    }
+
+    /**
+     * Sends the responses of entry that are ready, in the order of their requests. A response
+     * finished early waits for the ones before it.
+     */
+    private void sendResponses(ConnectionTable.Entry entry){
+        ReliableConnection connection = entry.getConnection();
+        while(!entry.getInProcess().isEmpty() && entry.getInProcess().peek().getResponse() != null){
+            IncomingRequest request = entry.getInProcess().poll();
+            try{
+                boolean keepAlive = request.isKeepAlive();
+                ResponseWriter.write(request.getResponse(), connection, keepAlive, request.getRequestId());
+                connection.endMessage();
+                if(!keepAlive){
+                    entry.setState(ConnectionState.LAST_ACK);
+                }
+            } catch (IOException e){
+                Log.warn(() -> "Error sending the response to the client.");
+            }
+        }
+    }
+
+    /**
+     * Fires retransmission timers, closes connections whose response is fully acknowledged, drops
+     * the ones whose client stopped answering, and periodically evicts idle connections.
+     */
+    private void serviceConnections() throws IOException{
+        for(ConnectionTable.Entry entry: connections.entries()){
+            ReliableConnection connection = entry.getConnection();
+            try{
+                connection.retransmitExpired();
+            } catch (ConnectionFailedException e){
+                Log.debug(() -> "Dropping connection: " + e.getMessage());
+                failed.add(entry);
+                continue;
+            }
+            if(entry.getState() == ConnectionState.LAST_ACK && !connection.hasUnacknowledged()){
+                entry.setState(ConnectionState.CLOSED);
+            }
+        }
+        for(ConnectionTable.Entry entry: failed){
+            connections.remove(entry);
+        }
+        failed.clear();
+
+        long now = System.nanoTime();
+        if(now - lastSweep >= SWEEP_INTERVAL_NANOS){
+            lastSweep = now;
+            int evicted = connections.evictIdle(now);
+            if(evicted > 0){
+                Log.debug(() -> "Evicted " + evicted + " idle connections, " + connections.size() + " left.");
+            }
+        }
+    }
+
+    /**
+     * Runs the task on the loop thread. Safe to call from any thread.
+     */
+    void execute(Runnable task){
+        tasks.add(task);
+        Selector selector = this.selector;
+        if(selector != null){
+            selector.wakeup();
+        }
+    }
+
+    private void runTasks(){
+        Runnable task;
+        while((task = tasks.poll()) != null){
+            task.run();
+        }
+    }
+
+    private long nextTimeout(){
+        /**
+         * Time to block in select before the earliest retransmission timer across all clients.
+         */
+        long wait = IDLE_POLL_INTERVAL;
+        for(ConnectionTable.Entry entry: connections.entries()){
+            long next = entry.getConnection().nextTimeoutMillis();
+            if(next >= 0){
+                wait = Math.min(wait, next);
+            }
+        }
+        return wait;
+    }
+}
@@ -0,0 +1,214 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Upload is the body of a POST being written to a temporary file while its packets arrive. Once
+ * the request is complete the file is renamed over its target in one step, so readers see either
+ * the old content or the new one, never a partial file, and a mapped GET is never truncated.
+ * Temporary files live in a directory of their own next to the served files, so the rename stays
+ * on one file system and the directory index never lists them.
+ * The ServerTransport loop thread only copies the body into chunks. Opening, writing and closing
+ * the file run in order on a single threaded I/O executor, so a slow disk never stalls the
+ * transport. Once MAX_PENDING_CHUNKS chunks wait for the disk the upload is backlogged: its
+ * RequestReader stops taking the connection's data until onDrained is called from the I/O thread,
+ * so an upload of any size still takes constant memory, and only its own connection waits.
+ * A failed write does not throw. It drops the upload and the failure is reported by commit, when
+ * the response is built.
+ */
+public class Upload {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_PENDING_CHUNKS = 8;
+
+    private final Executor io;
+    private final Runnable onDrained;
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    private final Queue<ByteBuffer> freeChunks = new ConcurrentLinkedQueue<>();
+    // Completed on the I/O thread once the file is closed or dropped, which publishes its fields.
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    // Filled on the loop thread.
+    private ByteBuffer chunk;
+
+    // Used on the I/O thread only, until done completes.
+    private Path temporary;
+    private FileChannel channel;
+    private long length;
+    private IOException failure;
+
+    private Upload(Executor io, Runnable onDrained){
+        this.io = io;
+        this.onDrained = onDrained;
+    }
+
+    /**
+     * Starts a new upload in the given directory of temporary files, written on io. onDrained is
+     * run on the I/O thread whenever the upload stops being backlogged.
+     */
+    public static Upload create(Path uploadDirectory, Executor io, Runnable onDrained){
+        Upload upload = new Upload(io, onDrained);
+        upload.run(() -> upload.open(uploadDirectory));
+        return upload;
+    }
+
+    /**
+     * Copies the remaining bytes of data, which may be reused once this returns. Never blocks,
+     * callers stop writing while the upload is backlogged.
+     */
+    public void write(ByteBuffer data){
+        while(data.hasRemaining()){
+            if(chunk == null){
+                ByteBuffer free = freeChunks.poll();
+                chunk = free != null ? free : ByteBuffer.allocate(CHUNK_SIZE);
+            }
+            int count = Math.min(data.remaining(), chunk.remaining());
+            int limit = data.limit();
+            data.limit(data.position() + count);
+            chunk.put(data);
+            data.limit(limit);
+            if(!chunk.hasRemaining()){
+                flush();
+            }
+        }
+    }
+
+    /**
+     * True while MAX_PENDING_CHUNKS chunks wait for the disk.
+     */
+    public boolean isBacklogged(){
+        return pendingChunks.get() >= MAX_PENDING_CHUNKS;
+    }
+
+    /**
+     * Bytes written to the file. Final once commit has returned.
+     */
+    public long getLength(){
+        return length;
+    }
+
+    /**
+     * Closes the temporary file once the whole body has been written.
+     */
+    public void finish(){
+        flush();
+        run(() -> {
+            if(failure == null){
+                try{
+                    channel.close();
+                } catch (IOException e){
+                    failed(e);
+                }
+            }
+            done.complete(null);
+        });
+    }
+
+    /**
+     * Waits for the body to be on disk, then atomically replaces target with it, or throws why the
+     * upload failed. Called on a worker.
+     */
+    public void commit(Path target) throws IOException{
+        done.join();
+        if(failure != null){
+            throw failure;
+        }
+        try{
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e){
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the upload and its temporary file, after the writes already queued.
+     */
+    public void abort(){
+        run(() -> {
+            if(failure == null){
+                failure = new IOException("Upload aborted");
+            }
+            discard();
+            done.complete(null);
+        });
+    }
+
+    private void open(Path uploadDirectory){
+        try{
+            temporary = Files.createTempFile(uploadDirectory, "upload-", ".tmp");
+            channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        } catch (IOException e){
+            failed(e);
+        }
+    }
+
+    private void flush(){
+        if(chunk == null){
+            return;
+        }
+        ByteBuffer full = chunk;
+        chunk = null;
+        full.flip();
+        pendingChunks.incrementAndGet();
+        run(() -> {
+            if(failure == null){
+                try{
+                    while(full.hasRemaining()){
+                        length += channel.write(full);
+                    }
+                } catch (IOException e){
+                    failed(e);
+                }
+            }
+            full.clear();
+            freeChunks.add(full);
+            if(pendingChunks.getAndDecrement() == MAX_PENDING_CHUNKS){
+                onDrained.run();
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the I/O executor, or right here once it is shut down, so that the last
+     * uploads of a stopping server are still closed and cleaned up.
+     */
+    private void run(Runnable task){
+        try{
+            io.execute(task);
+        } catch (RejectedExecutionException e){
+            task.run();
+        }
+    }
+
+    private void failed(IOException e){
+        failure = e;
+        discard();
+    }
+
+    private void discard(){
+        try{
+            if(channel != null){
+                channel.close();
+            }
+            if(temporary != null){
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e){
+            Log.warn(() -> "Could not delete the temporary upload " + temporary + ": " + e.getMessage());
+        }
+    }
+}
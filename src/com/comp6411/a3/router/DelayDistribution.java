@@ -0,0 +1,65 @@
+package com.comp6411.a3.router;
+
+import java.util.Random;
+
+/**
+ * DelayDistribution draws the time a packet spends in the router before it is forwarded.
+ * Samples come from the router's seeded Random so a run can be reproduced exactly.
+ */
+public interface DelayDistribution {
+
+    /**
+     * Returns the next delay in milliseconds, never negative.
+     */
+    long nextDelayMillis(Random random);
+
+    static DelayDistribution none() {
+        return random -> 0;
+    }
+
+    static DelayDistribution constant(long delay) {
+        return random -> delay;
+    }
+
+    /**
+     * Uniform between min and max milliseconds, both included. This is what router.exe does with
+     * min 0 and --max-delay.
+     */
+    static DelayDistribution uniform(long min, long max) {
+        if (min < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid delay range: " + min + ".." + max);
+        }
+        return random -> min + (long) (random.nextDouble() * (max - min + 1));
+    }
+
+    /**
+     * min plus an exponentially distributed delay with the given mean, cut at max. The long tail
+     * is what a congested link looks like: most packets are quick and a few are very late.
+     */
+    static DelayDistribution exponential(long min, long mean, long max) {
+        if (min < 0 || mean < 0 || max < min) {
+            throw new IllegalArgumentException("Invalid delay range: " + min + ".." + max);
+        }
+        return random -> Math.min(max, min + (long) (-mean * Math.log(1 - random.nextDouble())));
+    }
+
+    /**
+     * Parses constant, uniform or exponential into a distribution over min..max milliseconds.
+     * The exponential mean is a quarter of the range.
+     */
+    static DelayDistribution forName(String name, long min, long max) {
+        if (max == 0) {
+            return none();
+        }
+        switch (name.toLowerCase()) {
+            case "constant":
+                return constant(max);
+            case "uniform":
+                return uniform(min, max);
+            case "exponential":
+                return exponential(min, (max - min) / 4, max);
+            default:
+                throw new IllegalArgumentException("Unknown delay distribution: " + name);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.comp6411.a3.router;
+
+import com.comp6411.a3.Packet;
+import com.comp6411.a3.PacketBufferPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.Selector;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.channels.SelectionKey.OP_READ;
+
+/**
+ * Router is a Java replacement for router.exe.
+ * Every datagram carries its destination in the peer address and port of the Packet header. The
+ * router swaps that for the address and port of the sender, so the receiver can reply through the
+ * router, and forwards the datagram after dropping, delaying, duplicating or reordering it.
+ * All randomness comes from one seeded Random used by the router thread only, so a run with the
+ * same seed and the same traffic makes the same decisions.
+ * It can run from RouterDriver or be started inside a test or benchmark JVM.
+ */
+public class Router implements Runnable, Closeable {
+    public static final int DEFAULT_PORT = 3000;
+
+    private final int port;
+    private final double dropRate;
+    private final double duplicateRate;
+    private final double reorderRate;
+    private final long reorderDelay;
+    private final DelayDistribution delay;
+    private final long seed;
+    private final boolean isVerbose;
+
+    private final Random random;
+    private final PacketBufferPool pool;
+    private final DatagramChannel channel;
+    // Datagrams waiting for their delay to pass, earliest first.
+    private final PriorityQueue<Delivery> pending = new PriorityQueue<>();
+    private long deliveries;
+    private Thread thread;
+    private volatile Selector selector;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong duplicated = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+
+    private Router(Builder builder) throws IOException {
+        this.port = builder.port;
+        this.dropRate = builder.dropRate;
+        this.duplicateRate = builder.duplicateRate;
+        this.reorderRate = builder.reorderRate;
+        this.reorderDelay = builder.reorderDelay;
+        this.delay = builder.delay;
+        this.seed = builder.seed;
+        this.isVerbose = builder.isVerbose;
+        this.random = new Random(seed);
+        this.pool = builder.pool;
+
+        // The header only has room for IPv4 addresses.
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.bind(new InetSocketAddress(port));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The address the router is bound to, useful when it was started on port 0.
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    /**
+     * Starts the router on a daemon thread and returns.
+     */
+    public synchronized Router start() {
+        if (thread == null) {
+            thread = new Thread(this, "router-" + port);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return this;
+    }
+
+    /**
+     * Forwards datagrams on the calling thread until the router is closed.
+     */
+    @Override
+    public void run() {
+        try (Selector selector = Selector.open()) {
+            this.selector = selector;
+            channel.configureBlocking(false);
+            channel.register(selector, OP_READ);
+            if (isVerbose) {
+                System.out.println("Router listening on " + getLocalAddress() + " " + this);
+            }
+
+            ByteBuffer buf = pool.acquire();
+            try {
+                while (channel.isOpen()) {
+                    selector.select(nextTimeout());
+                    selector.selectedKeys().clear();
+                    receiveAll(buf);
+                    deliverDue(System.nanoTime());
+                }
+            } finally {
+                pool.release(buf);
+            }
+        } catch (IOException e) {
+            if (channel.isOpen()) {
+                System.out.println("Router stopped: " + e.getMessage());
+            }
+        } finally {
+            Delivery delivery;
+            while ((delivery = pending.poll()) != null) {
+                pool.release(delivery.buf);
+            }
+        }
+    }
+
+    private void receiveAll(ByteBuffer buf) throws IOException {
+        while (true) {
+            buf.clear();
+            InetSocketAddress from = (InetSocketAddress) channel.receive(buf);
+            if (from == null) {
+                return;
+            }
+            received.incrementAndGet();
+            buf.flip();
+            if (buf.remaining() < Packet.MIN_LEN) {
+                dropped.incrementAndGet();
+                if (isVerbose) {
+                    System.out.println("Router dropped a datagram of " + buf.remaining() + " bytes from " + from);
+                }
+                continue;
+            }
+            if (random.nextDouble() < dropRate) {
+                dropped.incrementAndGet();
+                continue;
+            }
+
+            // Destination from the header, then the sender goes in its place.
+            InetSocketAddress to = new InetSocketAddress(
+                    InetAddress.getByAddress(new byte[]{buf.get(5), buf.get(6), buf.get(7), buf.get(8)}),
+                    Short.toUnsignedInt(buf.getShort(9)));
+            buf.putInt(5, Packet.addressBits(from.getAddress()));
+            buf.putShort(9, (short) from.getPort());
+
+            schedule(buf, to);
+            if (random.nextDouble() < duplicateRate) {
+                duplicated.incrementAndGet();
+                schedule(buf, to);
+            }
+        }
+    }
+
+    /**
+     * Queues a copy of the datagram in buf for delivery after a sampled delay. A reordered packet
+     * is held back for reorderDelay more so the packets sent after it overtake it.
+     */
+    private void schedule(ByteBuffer buf, InetSocketAddress to) throws IOException {
+        long wait = delay.nextDelayMillis(random);
+        if (reorderRate > 0 && random.nextDouble() < reorderRate) {
+            reordered.incrementAndGet();
+            wait += reorderDelay;
+        }
+        if (wait == 0 && pending.isEmpty()) {
+            send(buf.duplicate(), to);
+            return;
+        }
+
+        ByteBuffer copy = pool.acquire();
+        copy.put(buf.duplicate());
+        copy.flip();
+        pending.add(new Delivery(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait), deliveries++, copy, to));
+    }
+
+    private void deliverDue(long now) {
+        Delivery delivery;
+        while ((delivery = pending.peek()) != null && delivery.due - now <= 0) {
+            pending.poll();
+            try {
+                send(delivery.buf, delivery.to);
+            } finally {
+                pool.release(delivery.buf);
+            }
+        }
+    }
+
+    /**
+     * Sends one datagram, or counts it as dropped. The destination comes from the packet header,
+     * so it may be one the socket refuses, e.g. port 0 or a broadcast address: that datagram is
+     * lost like any other, the router keeps forwarding the rest.
+     */
+    private void send(ByteBuffer buf, InetSocketAddress to) {
+        try {
+            // A full socket buffer loses the datagram, the same as a real link would.
+            if (channel.send(buf, to) > 0) {
+                forwarded.incrementAndGet();
+                return;
+            }
+        } catch (IOException e) {
+            if (isVerbose) {
+                System.out.println("Router could not send a datagram to " + to + ": " + e.getMessage());
+            }
+        }
+        dropped.incrementAndGet();
+    }
+
+    private long nextTimeout() {
+        Delivery next = pending.peek();
+        if (next == null) {
+            return 0;
+        }
+        // select(0) blocks forever, so wait at least 1 ms and deliver anything slightly early.
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(next.due - System.nanoTime()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getDuplicated() {
+        return duplicated.get();
+    }
+
+    public long getReordered() {
+        return reordered.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("drop=%.3f duplicate=%.3f reorder=%.3f seed=%d", dropRate, duplicateRate,
+                reorderRate, seed);
+    }
+
+    private static class Delivery implements Comparable<Delivery> {
+        private final long due;
+        // Keeps packets with the same due time in arrival order.
+        private final long order;
+        private final ByteBuffer buf;
+        private final InetSocketAddress to;
+
+        Delivery(long due, long order, ByteBuffer buf, InetSocketAddress to) {
+            this.due = due;
+            this.order = order;
+            this.buf = buf;
+            this.to = to;
+        }
+
+        @Override
+        public int compareTo(Delivery other) {
+            int byDue = Long.compare(due - other.due, 0);
+            return byDue != 0 ? byDue : Long.compare(order, other.order);
+        }
+    }
+
+    public static class Builder {
+        private int port = DEFAULT_PORT;
+        private double dropRate;
+        private double duplicateRate;
+        private double reorderRate;
+        private long reorderDelay = 10;
+        private DelayDistribution delay = DelayDistribution.none();
+        private long seed = System.nanoTime();
+        private boolean isVerbose;
+        private PacketBufferPool pool = PacketBufferPool.shared();
+
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder setDropRate(double dropRate) {
+            this.dropRate = checkRate("drop", dropRate);
+            return this;
+        }
+
+        public Builder setDuplicateRate(double duplicateRate) {
+            this.duplicateRate = checkRate("duplicate", duplicateRate);
+            return this;
+        }
+
+        public Builder setReorderRate(double reorderRate) {
+            this.reorderRate = checkRate("reorder", reorderRate);
+            return this;
+        }
+
+        /**
+         * Extra milliseconds a reordered packet is held for. Default is 10.
+         */
+        public Builder setReorderDelay(long reorderDelay) {
+            if (reorderDelay < 0) {
+                throw new IllegalArgumentException("Invalid reorder delay: " + reorderDelay);
+            }
+            this.reorderDelay = reorderDelay;
+            return this;
+        }
+
+        public Builder setDelay(DelayDistribution delay) {
+            this.delay = delay;
+            return this;
+        }
+
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder setVerbose(boolean isVerbose) {
+            this.isVerbose = isVerbose;
+            return this;
+        }
+
+        public Builder setBufferPool(PacketBufferPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Binds the router socket. Call start or run on the result to forward packets.
+         */
+        public Router create() throws IOException {
+            return new Router(this);
+        }
+
+        private static double checkRate(String name, double rate) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Invalid " + name + " rate: " + rate);
+            }
+            return rate;
+        }
+    }
+}
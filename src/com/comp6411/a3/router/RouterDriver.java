@@ -0,0 +1,108 @@
+package com.comp6411.a3.router;
+
+import java.io.IOException;
+
+/**
+ * Command line entry of the Router, taking the same flags as router.exe plus the ones it lacks.
+ * e.g. java com.comp6411.a3.router.RouterDriver --port=3000 --drop-rate=0.2 --max-delay=10ms --seed=1
+ */
+public class RouterDriver {
+    public static void main(String[] args) {
+        Router.Builder builder = Router.builder();
+        String distribution = "uniform";
+        long minDelay = 0;
+        long maxDelay = 0;
+
+        try {
+            for (String arg : args) {
+                if (arg.equalsIgnoreCase("-h") || arg.equalsIgnoreCase("--help")) {
+                    printHelp();
+                    return;
+                }
+                if (arg.equalsIgnoreCase("-v") || arg.equalsIgnoreCase("--verbose")) {
+                    builder.setVerbose(true);
+                    continue;
+                }
+
+                int split = arg.indexOf('=');
+                if (!arg.startsWith("--") || split < 0) {
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+                }
+                String name = arg.substring(2, split).toLowerCase();
+                String value = arg.substring(split + 1);
+                switch (name) {
+                    case "port":
+                        builder.setPort(Integer.parseInt(value));
+                        break;
+                    case "drop-rate":
+                        builder.setDropRate(Double.parseDouble(value));
+                        break;
+                    case "duplicate-rate":
+                        builder.setDuplicateRate(Double.parseDouble(value));
+                        break;
+                    case "reorder-rate":
+                        builder.setReorderRate(Double.parseDouble(value));
+                        break;
+                    case "reorder-delay":
+                        builder.setReorderDelay(parseMillis(value));
+                        break;
+                    case "min-delay":
+                        minDelay = parseMillis(value);
+                        break;
+                    case "max-delay":
+                        maxDelay = parseMillis(value);
+                        break;
+                    case "delay-distribution":
+                        distribution = value;
+                        break;
+                    case "seed":
+                        builder.setSeed(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument " + arg);
+                }
+            }
+            builder.setDelay(DelayDistribution.forName(distribution, minDelay, maxDelay));
+
+            try (Router router = builder.create()) {
+                System.out.println("Router is listening at " + router.getLocalAddress() + " " + router);
+                router.run();
+            }
+        } catch (IOException e) {
+            System.out.println("Router could not be started: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            System.out.println("Invalid command. " + e.getMessage());
+            printHelp();
+        }
+    }
+
+    /**
+     * Parses a duration in milliseconds, with an optional ms or s suffix like router.exe takes.
+     */
+    public static long parseMillis(String value) {
+        if (value.endsWith("ms")) {
+            return Long.parseLong(value.substring(0, value.length() - 2));
+        }
+        if (value.endsWith("s")) {
+            return Long.parseLong(value.substring(0, value.length() - 1)) * 1000;
+        }
+        return Long.parseLong(value);
+    }
+
+    static void printHelp() {
+        System.out.println("router forwards packets between httpc and httpfs over UDP.\n" +
+                "usage: router [--port=PORT] [--drop-rate=RATE] [--min-delay=DURATION] [--max-delay=DURATION]\n" +
+                "              [--delay-distribution=constant|uniform|exponential] [--duplicate-rate=RATE]\n" +
+                "              [--reorder-rate=RATE] [--reorder-delay=DURATION] [--seed=SEED] [-v]\n" +
+                "--port\tPort number the router listens at. Default is 3000.\n" +
+                "--drop-rate\tProbability between 0 and 1 that a packet is dropped. Default is 0.\n" +
+                "--min-delay, --max-delay\tRange of the delay added to each packet, e.g. 10ms. Default is no delay.\n" +
+                "--delay-distribution\tHow delays are drawn from the range. Default is uniform.\n" +
+                "--duplicate-rate\tProbability that a packet is delivered twice. Default is 0.\n" +
+                "--reorder-rate\tProbability that a packet is held back so later packets overtake it. Default is 0.\n" +
+                "--reorder-delay\tHow long a reordered packet is held back. Default is 10ms.\n" +
+                "--seed\tSeed of the random decisions, the same seed replays the same run.\n" +
+                "-v\tPrints debugging messages.");
+    }
+}
@@ -0,0 +1,85 @@
+package com.comp6411.a3;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveRetransmissionPolicyTest {
+
+    private final AdaptiveRetransmissionPolicy policy = new AdaptiveRetransmissionPolicy(1000, 20, 10000);
+
+    @Test
+    public void startsFromTheInitialTimeout() {
+        assertEquals(millis(1000), policy.timeoutNanos());
+        assertEquals(-1, policy.getSmoothedRtt());
+    }
+
+    @Test
+    public void takesTheFirstSampleAsTheSmoothedRtt() {
+        policy.onRttSample(millis(100));
+
+        // RTTVAR = R / 2, RTO = SRTT + 4 * RTTVAR
+        assertEquals(millis(100), policy.getSmoothedRtt());
+        assertEquals(millis(50), policy.getRttVariance());
+        assertEquals(millis(300), policy.timeoutNanos());
+    }
+
+    @Test
+    public void averagesLaterSamples() {
+        policy.onRttSample(millis(100));
+        policy.onRttSample(millis(200));
+
+        // RTTVAR = 3/4 * 50 + 1/4 * |100 - 200|, SRTT = 7/8 * 100 + 1/8 * 200
+        assertEquals(millis(62.5), policy.getRttVariance());
+        assertEquals(millis(112.5), policy.getSmoothedRtt());
+        assertEquals(millis(362.5), policy.timeoutNanos());
+    }
+
+    @Test
+    public void keepsTheTimeoutWithinItsBounds() {
+        policy.onRttSample(TimeUnit.MICROSECONDS.toNanos(100));
+        assertEquals(millis(20), policy.timeoutNanos());
+
+        policy.onRttSample(millis(60000));
+        assertEquals(millis(10000), policy.timeoutNanos());
+    }
+
+    @Test
+    public void doublesTheTimeoutOnEveryTimeoutUpToTheMaximum() {
+        policy.onRttSample(millis(100));
+        policy.onTimeout();
+        assertEquals(millis(600), policy.timeoutNanos());
+        policy.onTimeout();
+        assertEquals(millis(1200), policy.timeoutNanos());
+        for (int i = 0; i < 10; i++) {
+            policy.onTimeout();
+        }
+        assertEquals(millis(10000), policy.timeoutNanos());
+    }
+
+    @Test
+    public void restoresTheEstimateWhenARetransmissionGetsThrough() {
+        policy.onRttSample(millis(100));
+        policy.onTimeout();
+        policy.onTimeout();
+
+        // Karn's rule: no sample is taken from the retransmitted packet, the estimate is unchanged.
+        policy.onRetransmissionAcknowledged();
+        assertEquals(millis(100), policy.getSmoothedRtt());
+        assertEquals(millis(300), policy.timeoutNanos());
+    }
+
+    @Test
+    public void staysBackedOffWithoutAnyEstimate() {
+        policy.onTimeout();
+        policy.onRetransmissionAcknowledged();
+
+        assertEquals(millis(2000), policy.timeoutNanos());
+    }
+
+    private static long millis(double millis) {
+        return (long) (millis * 1e6);
+    }
+}
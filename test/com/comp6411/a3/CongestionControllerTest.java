@@ -0,0 +1,145 @@
+package com.comp6411.a3;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives NewRenoCongestionController and CubicCongestionController the way a ReliableConnection
+ * does: one onAck per acknowledged packet, a window of them per round trip.
+ */
+public class CongestionControllerTest {
+
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void renoGrowsByOnePacketPerAckInSlowStart() {
+        CongestionController reno = new NewRenoCongestionController();
+        assertEquals(NewRenoCongestionController.INITIAL_WINDOW, reno.congestionWindow());
+
+        ack(reno, 4, 0);
+        assertEquals(8, reno.congestionWindow());
+    }
+
+    @Test
+    public void renoHalvesOnFastRetransmitThenGrowsByOnePacketPerWindow() {
+        CongestionController reno = new NewRenoCongestionController();
+        ack(reno, 12, 0);
+        reno.onFastRetransmit(0);
+        assertEquals(8, reno.congestionWindow());
+
+        // Congestion avoidance: about a window of ACKs adds one packet.
+        ack(reno, 8, 0);
+        assertEquals(8, reno.congestionWindow());
+        ack(reno, 1, 0);
+        assertEquals(9, reno.congestionWindow());
+    }
+
+    @Test
+    public void renoRestartsFromOnePacketOnTimeout() {
+        CongestionController reno = new NewRenoCongestionController();
+        ack(reno, 12, 0);
+        reno.onTimeout(0);
+        assertEquals(1, reno.congestionWindow());
+
+        // Slow start again, up to half the window the timeout happened at.
+        ack(reno, 7, 0);
+        assertEquals(8, reno.congestionWindow());
+        ack(reno, 1, 0);
+        assertEquals(8, reno.congestionWindow());
+    }
+
+    @Test
+    public void renoKeepsAMinimumThreshold() {
+        CongestionController reno = new NewRenoCongestionController();
+        reno.onTimeout(0);
+        reno.onTimeout(0);
+        ack(reno, 1, 0);
+        assertEquals(NewRenoCongestionController.MIN_SSTHRESH, reno.congestionWindow());
+    }
+
+    @Test
+    public void cubicReducesByBetaOnFastRetransmit() {
+        CongestionController cubic = new CubicCongestionController();
+        assertEquals(CubicCongestionController.INITIAL_WINDOW, cubic.congestionWindow());
+        ack(cubic, 96, 0);
+        cubic.onFastRetransmit(0);
+
+        assertEquals(70, cubic.congestionWindow());
+    }
+
+    @Test
+    public void cubicRestartsFromOnePacketOnTimeout() {
+        CongestionController cubic = new CubicCongestionController();
+        ack(cubic, 96, 0);
+        cubic.onTimeout(0);
+        assertEquals(1, cubic.congestionWindow());
+
+        ack(cubic, 69, 0);
+        assertEquals(70, cubic.congestionWindow());
+    }
+
+    @Test
+    public void cubicClimbsBackToTheLossWindowThenProbesBeyondIt() {
+        CongestionController cubic = new CubicCongestionController();
+        ack(cubic, 96, 0);
+        cubic.onFastRetransmit(0);
+
+        // K = cbrt((100 - 70) / C) is about 4.2 seconds. The round trips are long, so the Reno
+        // estimate stays below the cubic curve.
+        long now = 0;
+        int atOneSecond = 0;
+        int atFourSeconds = 0;
+        for (int round = 1; round <= 80; round++) {
+            now += RTT_NANOS;
+            ack(cubic, cubic.congestionWindow(), now);
+            if (round == 10) {
+                atOneSecond = cubic.congestionWindow();
+            } else if (round == 40) {
+                atFourSeconds = cubic.congestionWindow();
+            }
+        }
+        int atEightSeconds = cubic.congestionWindow();
+
+        // Fast at first, flat around the old window, then past it.
+        assertTrue("grows after the loss: " + atOneSecond, atOneSecond > 80);
+        assertTrue("plateaus below the loss window: " + atFourSeconds,
+                atFourSeconds >= 95 && atFourSeconds <= 100);
+        assertTrue("probes beyond the loss window: " + atEightSeconds, atEightSeconds > 110);
+    }
+
+    @Test
+    public void cubicGrowsAtLeastLikeRenoOnShortRoundTrips() {
+        CongestionController cubic = new CubicCongestionController();
+        ack(cubic, 96, 0);
+        cubic.onFastRetransmit(0);
+
+        // 100 round trips take 10 ms, where the cubic curve alone has barely left 70 packets.
+        long now = 0;
+        for (int round = 0; round < 100; round++) {
+            now += TimeUnit.MICROSECONDS.toNanos(100);
+            ack(cubic, cubic.congestionWindow(), now);
+        }
+        assertTrue("follows the Reno estimate: " + cubic, cubic.congestionWindow() > 100);
+    }
+
+    @Test
+    public void findsControllersByName() {
+        assertTrue(CongestionController.forName("Reno").get() instanceof NewRenoCongestionController);
+        assertTrue(CongestionController.forName("cubic").get() instanceof CubicCongestionController);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnUnknownName() {
+        CongestionController.forName("vegas");
+    }
+
+    private static void ack(CongestionController controller, int count, long now) {
+        for (int i = 0; i < count; i++) {
+            controller.onAck(now);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.comp6411.a3;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void keepsSmallValuesExact() {
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.highestEquivalent((int) value));
+        }
+    }
+
+    @Test
+    public void splitsEachPowerOfTwoIntoSixtyFourBuckets() {
+        assertEquals(128, LatencyHistogram.index(128));
+        assertEquals(128, LatencyHistogram.index(129));
+        assertEquals(129, LatencyHistogram.index(130));
+        assertEquals(191, LatencyHistogram.index(255));
+        assertEquals(192, LatencyHistogram.index(256));
+        assertEquals(192, LatencyHistogram.index(259));
+        assertEquals(193, LatencyHistogram.index(260));
+        assertEquals(129, LatencyHistogram.highestEquivalent(128));
+        assertEquals(259, LatencyHistogram.highestEquivalent(192));
+    }
+
+    @Test
+    public void bucketsCoverEveryValueWithinTheirPrecision() {
+        Random random = new Random(6411);
+        for (int i = 0; i < 100000; i++) {
+            // Spread the values over every magnitude.
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = LatencyHistogram.index(value);
+            long highest = LatencyHistogram.highestEquivalent(index);
+            assertTrue(value + " above its bucket", value <= highest);
+            assertTrue(value + " below its bucket", index == 0 || LatencyHistogram.highestEquivalent(index - 1) < value);
+            assertTrue(value + " bucket too wide", highest - value <= value / 64);
+        }
+    }
+
+    @Test
+    public void coversTheWholeRangeOfLong() {
+        int last = LatencyHistogram.index(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalent(last));
+        assertEquals(last, LatencyHistogram.index(LatencyHistogram.highestEquivalent(last - 1) + 1));
+    }
+
+    @Test
+    public void reportsPercentilesOfRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void capsPercentilesAtTheLargestValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        // 1000 falls in the bucket [1000, 1007].
+        assertEquals(1007, LatencyHistogram.highestEquivalent(LatencyHistogram.index(1000)));
+        assertEquals(1000, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void countsNegativeValuesAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void addsAndResetsHistograms() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(5);
+        second.record(20);
+
+        first.add(second);
+        assertEquals(3, first.getCount());
+        assertEquals(5, first.getMin());
+        assertEquals(20, first.getMax());
+        assertEquals(10, first.getPercentile(50));
+
+        first.reset();
+        assertEquals(0, first.getCount());
+        assertEquals(0, first.getMin());
+        assertEquals(0, first.getPercentile(99));
+    }
+
+    @Test
+    public void summarizesItselfInASnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+
+        // The snapshot keeps the values of the moment it was taken.
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 1e-9);
+        assertTrue(Math.abs(snapshot.getP50() - 500) <= 500 / 64);
+        assertTrue(Math.abs(snapshot.getP99() - 990) <= 990 / 64);
+        assertEquals(1000, snapshot.getP999());
+        assertEquals(1000, snapshot.getMax());
+    }
+
+    @Test
+    public void formatsDurationsWithTheirUnit() {
+        assertEquals("999ns", LatencyHistogram.format(999));
+        assertEquals("1.50us", LatencyHistogram.format(1500));
+        assertEquals("12.5ms", LatencyHistogram.format(12_500_000));
+        assertEquals("250s", LatencyHistogram.format(250_000_000_000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidPercentiles() {
+        new LatencyHistogram().getPercentile(100.1);
+    }
+}
@@ -0,0 +1,281 @@
+package com.comp6411.a3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs two ReliableConnections against each other through a simulated link. Both send to a
+ * datagram channel owned by the test, which drops, duplicates and reorders what it receives with a
+ * seeded Random before handing it to the peer named in the packet header.
+ */
+public class ReliableConnectionTest {
+
+    private static final int SENDER_PORT = 1;
+    private static final int RECEIVER_PORT = 2;
+    private static final long TIMEOUT_MILLIS = 20;
+    private static final long TEST_DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(20);
+
+    private DatagramChannel link;
+    private DatagramChannel senderChannel;
+    private DatagramChannel receiverChannel;
+    private ReliableConnection sender;
+    private ReliableConnection receiver;
+    private final TransportStats senderStats = new TransportStats();
+    private final TransportStats receiverStats = new TransportStats();
+
+    @Before
+    public void setUp() throws IOException {
+        InetAddress localhost = InetAddress.getLoopbackAddress();
+        link = DatagramChannel.open().bind(new InetSocketAddress(localhost, 0));
+        link.configureBlocking(false);
+        senderChannel = DatagramChannel.open().bind(new InetSocketAddress(localhost, 0));
+        receiverChannel = DatagramChannel.open().bind(new InetSocketAddress(localhost, 0));
+        sender = connect(senderChannel, RECEIVER_PORT, senderStats);
+        receiver = connect(receiverChannel, SENDER_PORT, receiverStats);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+        link.close();
+        senderChannel.close();
+        receiverChannel.close();
+    }
+
+    @Test
+    public void deliversMessagesInOrderOverAPerfectLink() throws IOException {
+        List<byte[]> messages = messages(3, 20000);
+        for (byte[] message : messages) {
+            sender.send(message);
+        }
+
+        assertDelivered(messages, run(new Random(1), 0, 0, 0, messages.size()));
+        assertEquals(0, senderStats.getRetransmissions());
+        assertEquals(0, receiverStats.getDuplicatesReceived());
+    }
+
+    @Test
+    public void reassemblesMessagesUnderLossReorderingAndDuplication() throws IOException {
+        List<byte[]> messages = messages(4, 60000);
+        for (byte[] message : messages) {
+            sender.send(message);
+        }
+
+        assertDelivered(messages, run(new Random(42), 0.2, 0.1, 0.2, messages.size()));
+        assertTrue("lost packets are retransmitted", senderStats.getRetransmissions() > 0);
+        assertTrue("duplicates are detected", receiverStats.getDuplicatesReceived() > 0);
+    }
+
+    @Test
+    public void deliversEmptyAndSinglePacketMessages() throws IOException {
+        List<byte[]> messages = new ArrayList<>();
+        messages.add(new byte[0]);
+        messages.add(new byte[]{7});
+        messages.add(messages(1, Packet.MAX_PAYLOAD).get(0));
+        for (byte[] message : messages) {
+            sender.send(message);
+        }
+
+        assertDelivered(messages, run(new Random(7), 0.3, 0, 0.3, messages.size()));
+    }
+
+    @Test
+    public void retransmitsOnTimeoutUntilMaxTransmissions() throws IOException, InterruptedException {
+        sender.setMaxTransmissions(3);
+        sender.send(new byte[]{1, 2, 3});
+        long deadline = System.nanoTime() + TEST_DEADLINE_NANOS;
+        try {
+            // Nothing is ever delivered, so the packet keeps timing out.
+            while (System.nanoTime() - deadline < 0) {
+                Thread.sleep(Math.max(1, sender.nextTimeoutMillis()));
+                sender.retransmitExpired();
+            }
+            fail("The connection should have been given up on");
+        } catch (ConnectionFailedException e) {
+            assertEquals(2, senderStats.getTimeoutRetransmissions());
+        }
+    }
+
+    @Test
+    public void nextTimeoutIsUnsetWhenNothingIsInFlight() throws IOException {
+        assertEquals(-1, sender.nextTimeoutMillis());
+        sender.send(new byte[]{1});
+        long timeout = sender.nextTimeoutMillis();
+        assertTrue(timeout >= 1 && timeout <= TIMEOUT_MILLIS);
+
+        run(new Random(3), 0, 0, 0, 1);
+        assertEquals(-1, sender.nextTimeoutMillis());
+    }
+
+    @Test
+    public void closeReleasesBuffersOnce() throws IOException {
+        PacketBufferPool pool = new PacketBufferPool(64);
+        ReliableConnection connection = new ReliableConnection(senderChannel, link.getLocalAddress(),
+                InetAddress.getLoopbackAddress(), RECEIVER_PORT, 4, new FixedRetransmissionPolicy(TIMEOUT_MILLIS),
+                new NewRenoCongestionController(), pool);
+        connection.send(new byte[]{1, 2, 3});
+
+        connection.close();
+        int released = pool.available();
+        connection.close();
+
+        assertEquals(released, pool.available());
+    }
+
+    @Test
+    public void holdsSegmentsBackWhileTheReceiverIsNotReady() throws IOException {
+        SegmentBudget budget = new SegmentBudget(2);
+        receiver.setReceiver(budget);
+        byte[] message = messages(1, 5 * Packet.MAX_PAYLOAD).get(0);
+        sender.send(message);
+
+        // The held back segments are still acknowledged, within the window.
+        run(new Random(5), 0, 0, 0, 0);
+        assertEquals(2 * Packet.MAX_PAYLOAD, budget.received.size());
+        assertEquals(0, budget.messages);
+
+        budget.segments = Integer.MAX_VALUE;
+        receiver.resumeDelivery();
+        assertArrayEquals(message, budget.received.toByteArray());
+        assertEquals(1, budget.messages);
+    }
+
+    @Test
+    public void unwrapsSequenceNumbersAcrossThe32BitBoundary() {
+        long base = (1L << 32) - 2;
+        assertEquals(base, ReliableConnection.unwrap(base & 0xFFFFFFFFL, base));
+        assertEquals((1L << 32) + 3, ReliableConnection.unwrap(3, base));
+        assertEquals(base - 5, ReliableConnection.unwrap((base - 5) & 0xFFFFFFFFL, base));
+        assertEquals(7, ReliableConnection.unwrap(7, ReliableConnection.FIRST_SEQUENCE_NUMBER));
+    }
+
+    private ReliableConnection connect(DatagramChannel channel, int peerPort, TransportStats stats)
+            throws IOException {
+        ReliableConnection connection = new ReliableConnection(channel, link.getLocalAddress(),
+                InetAddress.getLoopbackAddress(), peerPort, 8, new FixedRetransmissionPolicy(TIMEOUT_MILLIS),
+                new NewRenoCongestionController(), new PacketBufferPool(64));
+        connection.setStats(stats);
+        return connection;
+    }
+
+    /**
+     * Relays packets between the two connections until the receiver has count messages and the
+     * sender has nothing left unacknowledged. Held back packets are delivered, in reverse order,
+     * whenever the link goes idle.
+     */
+    private List<byte[]> run(Random random, double loss, double duplication, double reordering, int count)
+            throws IOException {
+        List<byte[]> delivered = new ArrayList<>();
+        List<ByteBuffer> held = new ArrayList<>();
+        PacketView view = new PacketView();
+        long deadline = System.nanoTime() + TEST_DEADLINE_NANOS;
+        while (delivered.size() < count || sender.hasUnacknowledged()) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("Only " + delivered.size() + " of " + count + " messages delivered");
+            }
+            ByteBuffer packet = ByteBuffer.allocate(Packet.MAX_LEN);
+            if (link.receive(packet) == null) {
+                Collections.reverse(held);
+                for (ByteBuffer late : held) {
+                    deliver(view, late);
+                }
+                held.clear();
+                sender.retransmitExpired();
+                receiver.retransmitExpired();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            } else {
+                packet.flip();
+                double draw = random.nextDouble();
+                if (draw < loss) {
+                    // dropped
+                } else if (draw < loss + duplication) {
+                    deliver(view, packet.duplicate());
+                    deliver(view, packet);
+                } else if (draw < loss + duplication + reordering) {
+                    held.add(packet);
+                } else {
+                    deliver(view, packet);
+                }
+            }
+            byte[] message;
+            while ((message = receiver.nextMessage()) != null) {
+                delivered.add(message);
+            }
+        }
+        return delivered;
+    }
+
+    private void deliver(PacketView view, ByteBuffer packet) throws IOException {
+        view.wrap(packet);
+        (view.getPeerPort() == RECEIVER_PORT ? receiver : sender).handle(view);
+    }
+
+    /**
+     * Takes the given number of segments, then is not ready until given more.
+     */
+    private static class SegmentBudget implements MessageReceiver {
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private int segments;
+        private int messages;
+
+        SegmentBudget(int segments) {
+            this.segments = segments;
+        }
+
+        @Override
+        public void onData(ByteBuffer data) {
+            segments--;
+            received.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+        }
+
+        @Override
+        public boolean isReady() {
+            return segments > 0;
+        }
+
+        @Override
+        public void onMessageEnd() {
+            messages++;
+        }
+    }
+
+    private static List<byte[]> messages(int count, int size) {
+        Random random = new Random(size);
+        List<byte[]> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // Sizes that are not a multiple of the payload, so the last segments are partial.
+            byte[] message = new byte[size - i * 37];
+            random.nextBytes(message);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static void assertDelivered(List<byte[]> expected, List<byte[]> delivered) {
+        assertEquals(expected.size(), delivered.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("message " + i, expected.get(i), delivered.get(i));
+        }
+    }
+}
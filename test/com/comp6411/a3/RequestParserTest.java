@@ -0,0 +1,156 @@
+package com.comp6411.a3;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestParserTest {
+
+    private RequestParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new RequestParser();
+        parser.reset(new RequestParameters());
+    }
+
+    @Test
+    public void parsesAHeadFedOneByteAtATime() {
+        byte[] head = bytes("GET /notes.txt HTTP/1.1\r\nHost: localhost:8007\r\nX-Request-Id: 12\r\n\r\n");
+        for (int i = 0; i < head.length - 1; i++) {
+            assertEquals("byte " + i, i < 24 ? RequestParser.State.REQUEST_LINE : RequestParser.State.HEADERS,
+                    parser.parse(ByteBuffer.wrap(head, i, 1)));
+        }
+        assertEquals(RequestParser.State.COMPLETE, parser.parse(ByteBuffer.wrap(head, head.length - 1, 1)));
+
+        RequestParameters request = parser.getRequest();
+        assertEquals("GET", request.method);
+        assertEquals("HTTP/1.1", request.version);
+        assertEquals("localhost:8007", request.host);
+        assertEquals("12", request.requestId);
+        assertTrue(request.keepAlive);
+    }
+
+    @Test
+    public void parsesHeadersSplitAcrossBuffers() {
+        String request = "POST /upload HTTP/1.0\r\nConnection: keep-alive\r\nContent-Len";
+        assertEquals(RequestParser.State.HEADERS, parser.parse(buffer(request)));
+        assertEquals(RequestParser.State.HEADERS, parser.parse(buffer("gth: 11\r")));
+        assertEquals(RequestParser.State.BODY, parser.parse(buffer("\n\r\n")));
+
+        assertEquals("POST", parser.getRequest().method);
+        assertEquals(11, parser.getRequest().contentLength);
+        assertTrue(parser.getRequest().keepAlive);
+    }
+
+    @Test
+    public void slicesTheBodyUpToContentLength() {
+        ByteBuffer first = buffer("POST /a HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello");
+        assertEquals(RequestParser.State.BODY, parser.parse(first));
+        assertEquals("hello", body(first));
+        assertEquals(RequestParser.State.BODY, parser.getState());
+
+        ByteBuffer second = buffer(" worldGET / HTTP/1.1\r\n\r\n");
+        assertEquals(" world", body(second));
+        assertEquals(RequestParser.State.COMPLETE, parser.getState());
+        assertEquals(11, parser.getBodyReceived());
+
+        // The rest starts the next request.
+        parser.reset(new RequestParameters());
+        assertEquals(RequestParser.State.COMPLETE, parser.parse(second));
+        assertEquals("GET", parser.getRequest().method);
+    }
+
+    @Test
+    public void completesAGetWithoutContentLengthAtTheBlankLine() {
+        ByteBuffer data = buffer("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n");
+        assertEquals(RequestParser.State.COMPLETE, parser.parse(data));
+        assertEquals("GET /b HTTP/1.1\r\n\r\n", ISO_8859_1.decode(data).toString());
+    }
+
+    @Test
+    public void runsAPostBodyWithoutContentLengthToTheEndOfTheMessage() {
+        ByteBuffer data = buffer("POST /a HTTP/1.1\r\n\r\nsome body");
+        assertEquals(RequestParser.State.BODY, parser.parse(data));
+        assertEquals("some body", body(data));
+        assertEquals(RequestParser.State.BODY, parser.getState());
+        assertEquals(RequestParser.State.COMPLETE, parser.endOfMessage());
+    }
+
+    @Test
+    public void acceptsBareLineFeeds() {
+        assertEquals(RequestParser.State.COMPLETE, parser.parse(buffer("GET /a HTTP/1.1\nHost: h\n\n")));
+        assertEquals("h", parser.getRequest().host);
+    }
+
+    @Test
+    public void rejectsABareCarriageReturnInAHeader() {
+        ByteBuffer data = buffer("GET /a HTTP/1.1\r\nX-Request-Id: 1\rX-Injected: yes\r\n\r\n");
+        assertEquals(RequestParser.State.ERROR, parser.parse(data));
+        assertNull(parser.getRequest().requestId);
+    }
+
+    @Test
+    public void rejectsAnUnsupportedMethod() {
+        assertEquals(RequestParser.State.ERROR, parser.parse(buffer("DELETE /a HTTP/1.1\r\n")));
+        assertTrue(parser.getError().contains("DELETE"));
+    }
+
+    @Test
+    public void rejectsAnInvalidContentLength() {
+        assertEquals(RequestParser.State.ERROR, parser.parse(buffer("POST /a HTTP/1.1\r\nContent-Length: -1\r\n")));
+    }
+
+    @Test
+    public void rejectsABodyShorterThanItsContentLength() {
+        ByteBuffer data = buffer("POST /a HTTP/1.1\r\nContent-Length: 10\r\n\r\nshort");
+        parser.parse(data);
+        body(data);
+        assertEquals(RequestParser.State.ERROR, parser.endOfMessage());
+    }
+
+    @Test
+    public void treatsAnIncompleteHeadAsAnError() {
+        parser.parse(buffer("GET /a HT"));
+        assertTrue(parser.isStarted());
+        assertEquals(RequestParser.State.ERROR, parser.endOfMessage());
+    }
+
+    @Test
+    public void ignoresAnEmptyMessage() {
+        assertFalse(parser.isStarted());
+        assertEquals(RequestParser.State.REQUEST_LINE, parser.endOfMessage());
+    }
+
+    @Test
+    public void closesHttp10ConnectionsUnlessAskedNotTo() {
+        parser.parse(buffer("GET /a HTTP/1.0\r\n\r\n"));
+        assertFalse(parser.getRequest().keepAlive);
+
+        parser.reset(new RequestParameters());
+        parser.parse(buffer("GET /a HTTP/1.1\r\nConnection: close\r\n\r\n"));
+        assertFalse(parser.getRequest().keepAlive);
+    }
+
+    private String body(ByteBuffer data) {
+        int limit = parser.bodySlice(data);
+        String body = ISO_8859_1.decode(data).toString();
+        data.limit(limit);
+        return body;
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(bytes(text));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(ISO_8859_1);
+    }
+}
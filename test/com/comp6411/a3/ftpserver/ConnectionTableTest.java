@@ -0,0 +1,119 @@
+package com.comp6411.a3.ftpserver;
+
+import com.comp6411.a3.FixedRetransmissionPolicy;
+import com.comp6411.a3.NewRenoCongestionController;
+import com.comp6411.a3.PacketBufferPool;
+import com.comp6411.a3.ReliableConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionTableTest {
+
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    private final ConnectionTable table = new ConnectionTable(IDLE_TIMEOUT);
+    private final PacketBufferPool pool = new PacketBufferPool(64);
+    private DatagramChannel channel;
+
+    @Before
+    public void setUp() throws IOException{
+        channel = DatagramChannel.open();
+    }
+
+    @After
+    public void tearDown() throws IOException{
+        channel.close();
+    }
+
+    @Test
+    public void opensConnectionsInSynReceived(){
+        ConnectionTable.Entry entry = table.open(1, 0, connection(), 100);
+
+        assertEquals(ConnectionState.SYN_RECEIVED, entry.getState());
+        assertSame(entry, table.get(1));
+        assertTrue(table.contains(entry));
+        assertEquals(100, entry.getOpenedAt());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void followsTheServerStates(){
+        ConnectionTable.Entry entry = table.open(1, 0, connection(), 0);
+        for(ConnectionState state: new ConnectionState[]{ConnectionState.ESTABLISHED, ConnectionState.CLOSE_WAIT,
+                ConnectionState.LAST_ACK, ConnectionState.CLOSED}){
+            entry.setState(state);
+            assertEquals(state, table.get(1).getState());
+        }
+        // A closed entry lingers to absorb retransmissions.
+        assertTrue(table.contains(entry));
+    }
+
+    @Test
+    public void aNewSynReplacesTheConnectionOfAPeer(){
+        ConnectionTable.Entry first = table.open(1, 0, connection(), 0);
+        ConnectionTable.Entry second = table.open(1, 5, connection(), 0);
+
+        assertFalse(table.contains(first));
+        assertSame(second, table.get(1));
+        assertEquals(5, second.getConnectionId());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void evictsOnlyIdleConnections(){
+        ConnectionTable.Entry idle = table.open(1, 0, connection(), 0);
+        ConnectionTable.Entry active = table.open(2, 0, connection(), 0);
+        active.touch(IDLE_TIMEOUT / 2);
+
+        assertEquals(1, table.evictIdle(IDLE_TIMEOUT));
+
+        assertFalse(table.contains(idle));
+        assertEquals(ConnectionState.CLOSED, idle.getState());
+        assertTrue(table.contains(active));
+        assertEquals(ConnectionState.SYN_RECEIVED, active.getState());
+        assertEquals(1, table.evictIdle(IDLE_TIMEOUT + IDLE_TIMEOUT / 2));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void removingAnEvictedEntryReleasesNothingTwice(){
+        ConnectionTable.Entry entry = table.open(1, 0, connection(), 0);
+        int before = pool.available();
+
+        table.evictIdle(IDLE_TIMEOUT);
+        int released = pool.available();
+        table.remove(entry);
+
+        assertTrue(released > before);
+        assertEquals(released, pool.available());
+    }
+
+    @Test
+    public void removeClosesTheConnection(){
+        ConnectionTable.Entry entry = table.open(1, 0, connection(), 0);
+        entry.setState(ConnectionState.ESTABLISHED);
+
+        table.remove(entry);
+
+        assertFalse(table.contains(entry));
+        assertEquals(ConnectionState.CLOSED, entry.getState());
+    }
+
+    private ReliableConnection connection(){
+        return new ReliableConnection(channel, new InetSocketAddress(InetAddress.getLoopbackAddress(), 9),
+                InetAddress.getLoopbackAddress(), 8007, 4, new FixedRetransmissionPolicy(100),
+                new NewRenoCongestionController(), pool);
+    }
+}
@@ -0,0 +1,124 @@
+package com.comp6411.a3.ftpserver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContentCacheTest {
+
+    private final ContentCache cache = new ContentCache(1000);
+
+    @Test
+    public void servesWhatWasPut(){
+        byte[] body = {1, 2, 3};
+        cache.put("a.txt", body, cache.generation("a.txt"));
+
+        assertArrayEquals(body, cache.get("a.txt"));
+        assertNull(cache.get("b.txt"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void dropsAnInvalidatedFile(){
+        cache.put("a.txt", new byte[10], cache.generation("a.txt"));
+        cache.invalidate("a.txt");
+
+        assertNull(cache.get("a.txt"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.count());
+    }
+
+    @Test
+    public void refusesContentReadBeforeAnInvalidation(){
+        long generation = cache.generation("a.txt");
+        // The file is rewritten while a worker reads the old content.
+        cache.invalidate("a.txt");
+        cache.put("a.txt", new byte[10], generation);
+
+        assertNull(cache.get("a.txt"));
+    }
+
+    @Test
+    public void acceptsOtherFilesReadDuringAnInvalidation(){
+        String other = otherStripe("a.txt");
+        long generation = cache.generation(other);
+        cache.invalidate("a.txt");
+        cache.put(other, new byte[10], generation);
+
+        assertArrayEquals(new byte[10], cache.get(other));
+    }
+
+    @Test
+    public void invalidatesEverythingWhenTheDirectoryChanged(){
+        long generation = cache.generation("b.txt");
+        cache.put("a.txt", new byte[10], cache.generation("a.txt"));
+        cache.directoryChanged();
+        cache.put("b.txt", new byte[10], generation);
+
+        assertNull(cache.get("a.txt"));
+        assertNull(cache.get("b.txt"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void invalidatesThroughTheDirectoryIndexListener(){
+        cache.put("a.txt", new byte[10], cache.generation("a.txt"));
+        cache.fileChanged("a.txt");
+
+        assertNull(cache.get("a.txt"));
+    }
+
+    @Test
+    public void replacingAnEntryKeepsTheSizeRight(){
+        cache.put("a.txt", new byte[100], cache.generation("a.txt"));
+        cache.put("a.txt", new byte[40], cache.generation("a.txt"));
+
+        assertEquals(40, cache.size());
+        assertEquals(1, cache.count());
+    }
+
+    @Test
+    public void doesNotCacheBodiesLargerThanAQuarterOfTheCapacity(){
+        cache.put("big.txt", new byte[251], cache.generation("big.txt"));
+
+        assertNull(cache.get("big.txt"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedFiles() throws InterruptedException{
+        for(int i = 0; i < 5; i++){
+            cache.put(i + ".txt", new byte[200], cache.generation(i + ".txt"));
+            // Access times are in System.nanoTime, make sure they differ.
+            Thread.sleep(2);
+        }
+        cache.get("0.txt");
+        Thread.sleep(2);
+        cache.put("5.txt", new byte[200], cache.generation("5.txt"));
+
+        // Evicted down to 7/8 of the capacity, the two least recently used go.
+        assertEquals(2, cache.getEvictions());
+        assertNull(cache.get("1.txt"));
+        assertNull(cache.get("2.txt"));
+        assertArrayEquals(new byte[200], cache.get("0.txt"));
+        assertArrayEquals(new byte[200], cache.get("5.txt"));
+        assertEquals(800, cache.size());
+    }
+
+    /**
+     * A name whose generation is tracked apart from name, generations being striped.
+     */
+    private String otherStripe(String name){
+        for(int i = 0; ; i++){
+            String other = "other" + i + ".txt";
+            long before = cache.generation(other);
+            cache.invalidate(name);
+            if(cache.generation(other) == before){
+                return other;
+            }
+        }
+    }
+}
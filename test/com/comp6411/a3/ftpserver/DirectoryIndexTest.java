@@ -0,0 +1,132 @@
+package com.comp6411.a3.ftpserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DirectoryIndexTest {
+
+    private static final long DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(20);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private DirectoryIndex index;
+
+    @Before
+    public void setUp() throws IOException{
+        directory = folder.getRoot().toPath();
+        Files.write(directory.resolve("Notes.txt"), new byte[]{1});
+        Files.write(directory.resolve("data.json"), new byte[]{2});
+        Files.write(directory.resolve("data.xml"), new byte[]{3});
+        Files.createDirectory(directory.resolve("sub"));
+        index = DirectoryIndex.open(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException{
+        index.close();
+    }
+
+    @Test
+    public void indexesTheRegularFilesOnly(){
+        assertEquals(3, index.size());
+        assertEquals(new HashSet<>(asList("Notes.txt", "data.json", "data.xml")), new HashSet<>(index.names()));
+        assertNull(index.resolve("sub"));
+    }
+
+    @Test
+    public void resolvesFullNamesIgnoringCase(){
+        assertEquals("Notes.txt", index.resolve("notes.TXT"));
+        assertEquals("data.xml", index.resolve("DATA.xml"));
+        assertNull(index.resolve("missing.txt"));
+    }
+
+    @Test
+    public void resolvesBaseNamesToTheAlphabeticallyFirstFile(){
+        assertEquals("Notes.txt", index.resolve("notes"));
+        assertEquals("data.json", index.resolve("data"));
+    }
+
+    @Test
+    public void recordsTheFilesTheServerWrites(){
+        index.add("new.txt");
+        assertEquals("new.txt", index.resolve("new"));
+
+        index.remove("data.json");
+        assertEquals("data.xml", index.resolve("data"));
+        index.remove("data.xml");
+        assertNull(index.resolve("data"));
+    }
+
+    @Test
+    public void picksUpFilesChangedOnDisk() throws IOException{
+        List<String> changed = new CopyOnWriteArrayList<>();
+        index.addListener(new DirectoryIndex.Listener(){
+            @Override
+            public void fileChanged(String name){
+                changed.add(name);
+            }
+
+            @Override
+            public void directoryChanged(){
+            }
+        });
+
+        Files.write(directory.resolve("later.txt"), new byte[]{4});
+        await(() -> "later.txt".equals(index.resolve("later")));
+        await(() -> changed.contains("later.txt"));
+
+        Files.delete(directory.resolve("Notes.txt"));
+        await(() -> index.resolve("notes") == null);
+    }
+
+    @Test
+    public void tellsEmptyDirectoriesApart() throws IOException{
+        assertFalse(index.isEmpty());
+        try(DirectoryIndex empty = DirectoryIndex.open(folder.newFolder().toPath())){
+            assertTrue(empty.isEmpty());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void refusesToIndexAFile() throws IOException{
+        DirectoryIndex.open(directory.resolve("Notes.txt"));
+    }
+
+    @Test
+    public void takesTheBaseNameBeforeTheFirstDot(){
+        assertEquals("archive", DirectoryIndex.baseName("Archive.tar.gz"));
+        assertEquals("readme", DirectoryIndex.baseName("README"));
+    }
+
+    private static void await(BooleanSupplier condition){
+        long deadline = System.nanoTime() + DEADLINE_NANOS;
+        while(!condition.getAsBoolean()){
+            if(System.nanoTime() - deadline > 0){
+                fail("The watch service never reported the change");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.comp6411.a3.ftpserver;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Stands in for the upload writer thread, its tasks run when the test says so.
+    private final Queue<Runnable> io = new ArrayDeque<>();
+    private final List<IncomingRequest> requests = new ArrayList<>();
+    private final AtomicInteger drained = new AtomicInteger();
+    private RequestReader reader;
+
+    @Before
+    public void setUp() throws IOException{
+        Path uploads = folder.newFolder(".uploads").toPath();
+        reader = new RequestReader(uploads, io::add, requests::add, drained::incrementAndGet);
+    }
+
+    @Test
+    public void readsPipelinedRequestsFromOneSegment(){
+        reader.onData(buffer("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\nX-Request-Id: 2\r\n\r\n"));
+
+        assertEquals(2, requests.size());
+        assertEquals("a", requests.get(0).getParameters().file);
+        assertEquals("2", requests.get(1).getRequestId());
+        assertNull(requests.get(1).getUpload());
+    }
+
+    @Test
+    public void streamsAPostBodyToAnUpload() throws IOException{
+        byte[] body = UploadTest.body(3 * Upload.CHUNK_SIZE);
+        reader.onData(buffer("POST /notes.txt HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n"));
+        for(int offset = 0; offset < body.length; offset += 1024){
+            reader.onData(ByteBuffer.wrap(body, offset, 1024));
+        }
+
+        assertEquals(1, requests.size());
+        IncomingRequest request = requests.get(0);
+        assertNull(request.getError());
+        assertEquals(body.length, request.getBodyLength());
+        // Only the start of the body is kept for the response.
+        assertTrue(request.getEcho().endsWith("(" + body.length + " bytes)"));
+
+        runIo();
+        Path target = folder.getRoot().toPath().resolve("notes.txt");
+        request.getUpload().commit(target);
+        assertArrayEquals(body, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void echoesABodyWithoutAFile(){
+        reader.onData(buffer("POST / HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello"));
+
+        assertEquals("hello", requests.get(0).getEcho());
+        assertNull(requests.get(0).getUpload());
+    }
+
+    @Test
+    public void isNotReadyWhileTheUploadIsBacklogged(){
+        reader.onData(buffer("POST /big.txt HTTP/1.1\r\n\r\n"));
+        byte[] segment = new byte[1024];
+        int segments = 0;
+        while(reader.isReady()){
+            reader.onData(ByteBuffer.wrap(segment));
+            segments++;
+        }
+        assertEquals(Upload.MAX_PENDING_CHUNKS * Upload.CHUNK_SIZE / segment.length, segments);
+
+        runIo();
+        assertTrue(reader.isReady());
+        assertEquals(1, drained.get());
+        reader.abort();
+        runIo();
+    }
+
+    @Test
+    public void reportsATruncatedBodyAndDropsItsUpload(){
+        reader.onData(buffer("POST /notes.txt HTTP/1.1\r\nContent-Length: 10\r\n\r\nshort"));
+        reader.onMessageEnd();
+        runIo();
+
+        assertEquals(1, requests.size());
+        assertNotNull(requests.get(0).getError());
+        assertNull(requests.get(0).getUpload());
+        assertFalse(Files.exists(folder.getRoot().toPath().resolve("notes.txt")));
+    }
+
+    @Test
+    public void cutsTheEchoOnACharacterBoundary(){
+        // "a", then the two bytes of U+00E9 and the first two of the three of U+20AC.
+        byte[] text = {'a', (byte) 0xC3, (byte) 0xA9, (byte) 0xE2, (byte) 0x82};
+        assertEquals(3, RequestReader.characterBoundary(text, 5));
+        assertEquals(3, RequestReader.characterBoundary(text, 4));
+        assertEquals(3, RequestReader.characterBoundary(text, 3));
+        assertEquals(1, RequestReader.characterBoundary(text, 2));
+        assertEquals(1, RequestReader.characterBoundary(text, 1));
+        // Not UTF-8, e.g. a stray continuation byte, is left alone.
+        assertEquals(2, RequestReader.characterBoundary(new byte[]{(byte) 0x82, (byte) 0x82}, 2));
+    }
+
+    private void runIo(){
+        Runnable task;
+        while((task = io.poll()) != null){
+            task.run();
+        }
+    }
+
+    private static ByteBuffer buffer(String text){
+        return ByteBuffer.wrap(text.getBytes(ISO_8859_1));
+    }
+}
@@ -0,0 +1,133 @@
+package com.comp6411.a3.ftpserver;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UploadTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Stands in for the upload writer thread, its tasks run when the test says so.
+    private final Queue<Runnable> io = new ArrayDeque<>();
+    private final AtomicInteger drained = new AtomicInteger();
+    private Path uploads;
+
+    @Before
+    public void setUp() throws IOException{
+        uploads = folder.newFolder(".uploads").toPath();
+    }
+
+    @Test
+    public void writesTheBodyAndRenamesItIntoPlace() throws IOException{
+        byte[] body = body(3 * Upload.CHUNK_SIZE + 123);
+        Upload upload = Upload.create(uploads, io::add, drained::incrementAndGet);
+        // Written in packet sized pieces, like the transport does.
+        for(int offset = 0; offset < body.length; offset += 1024){
+            upload.write(ByteBuffer.wrap(body, offset, Math.min(1024, body.length - offset)));
+        }
+        upload.finish();
+        runIo();
+
+        Path target = folder.getRoot().toPath().resolve("target.txt");
+        upload.commit(target);
+        assertArrayEquals(body, Files.readAllBytes(target));
+        assertEquals(body.length, upload.getLength());
+        assertEquals(0, uploadsLeft());
+    }
+
+    @Test
+    public void replacesAnExistingFile() throws IOException{
+        Path target = folder.newFile("target.txt").toPath();
+        Files.write(target, body(5000));
+        Upload upload = Upload.create(uploads, Runnable::run, drained::incrementAndGet);
+        upload.write(ByteBuffer.wrap(new byte[]{1, 2}));
+        upload.finish();
+
+        upload.commit(target);
+        assertArrayEquals(new byte[]{1, 2}, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void isBackloggedWhileTooManyChunksWaitForTheDisk(){
+        Upload upload = Upload.create(uploads, io::add, drained::incrementAndGet);
+        upload.write(ByteBuffer.wrap(body((Upload.MAX_PENDING_CHUNKS - 1) * Upload.CHUNK_SIZE)));
+        assertFalse(upload.isBacklogged());
+        upload.write(ByteBuffer.wrap(body(Upload.CHUNK_SIZE)));
+        assertTrue(upload.isBacklogged());
+
+        // The open, then the first chunk.
+        io.poll().run();
+        io.poll().run();
+        assertFalse(upload.isBacklogged());
+        assertEquals(1, drained.get());
+
+        runIo();
+        assertEquals(1, drained.get());
+        upload.abort();
+        runIo();
+    }
+
+    @Test
+    public void abortDeletesTheTemporaryFile() throws IOException{
+        Upload upload = Upload.create(uploads, Runnable::run, drained::incrementAndGet);
+        upload.write(ByteBuffer.wrap(body(Upload.CHUNK_SIZE + 1)));
+        assertEquals(1, uploadsLeft());
+
+        upload.abort();
+        assertEquals(0, uploadsLeft());
+        try{
+            upload.commit(folder.getRoot().toPath().resolve("target.txt"));
+            fail("An aborted upload was committed");
+        } catch (IOException e){
+            assertFalse(Files.exists(folder.getRoot().toPath().resolve("target.txt")));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsAFailedOpenOnCommit() throws IOException{
+        Upload upload = Upload.create(uploads.resolve("missing"), Runnable::run, drained::incrementAndGet);
+        // Writing does not fail, the body is only dropped.
+        upload.write(ByteBuffer.wrap(body(Upload.CHUNK_SIZE * 2)));
+        upload.finish();
+
+        upload.commit(folder.getRoot().toPath().resolve("target.txt"));
+    }
+
+    private long uploadsLeft() throws IOException{
+        try(Stream<Path> left = Files.list(uploads)){
+            return left.count();
+        }
+    }
+
+    private void runIo(){
+        Runnable task;
+        while((task = io.poll()) != null){
+            task.run();
+        }
+    }
+
+    static byte[] body(int length){
+        byte[] body = new byte[length];
+        new Random(length).nextBytes(body);
+        return body;
+    }
+}
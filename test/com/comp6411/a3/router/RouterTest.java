@@ -0,0 +1,199 @@
+package com.comp6411.a3.router;
+
+import com.comp6411.a3.Packet;
+import com.comp6411.a3.PacketBufferPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sends packets between two channels through a Router started on a free port, and checks what
+ * comes out of it.
+ */
+public class RouterTest {
+
+    private static final long DEADLINE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final InetAddress localhost = InetAddress.getLoopbackAddress();
+    private final PacketBufferPool pool = new PacketBufferPool(256);
+    private final List<Router> routers = new ArrayList<>();
+    private DatagramChannel alice;
+    private DatagramChannel bob;
+
+    @Before
+    public void setUp() throws IOException {
+        alice = open();
+        bob = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Router router : routers) {
+            router.close();
+        }
+        alice.close();
+        bob.close();
+    }
+
+    @Test
+    public void forwardsToTheHeaderDestinationWithTheSenderInItsPlace() throws IOException {
+        Router router = start(Router.builder());
+        send(router, alice, bob, 42, new byte[]{1, 2, 3});
+
+        ByteBuffer received = receive(bob);
+        Packet packet = Packet.fromBuffer(received);
+        assertEquals(Packet.DATA, packet.getType());
+        assertEquals(42, packet.getSequenceNumber());
+        assertEquals(localhost, packet.getPeerAddress());
+        assertEquals(port(alice), packet.getPeerPort());
+        assertEquals(3, packet.getPayload().length);
+        // The router counts a datagram once sent, so possibly after it was received.
+        await("forwarded", router::getForwarded, 1);
+    }
+
+    @Test
+    public void dropsEverythingAtADropRateOfOne() throws IOException {
+        Router router = start(Router.builder().setDropRate(1));
+        for (int i = 0; i < 10; i++) {
+            send(router, alice, bob, i, new byte[0]);
+        }
+
+        await("received", router::getReceived, 10);
+        assertEquals(10, router.getDropped());
+        assertEquals(0, router.getForwarded());
+        assertNull(bob.receive(ByteBuffer.allocate(Packet.MAX_LEN)));
+    }
+
+    @Test
+    public void duplicatesEverythingAtADuplicateRateOfOne() throws IOException {
+        Router router = start(Router.builder().setDuplicateRate(1));
+        send(router, alice, bob, 7, new byte[]{9});
+
+        assertEquals(7, Packet.fromBuffer(receive(bob)).getSequenceNumber());
+        assertEquals(7, Packet.fromBuffer(receive(bob)).getSequenceNumber());
+        assertEquals(1, router.getDuplicated());
+    }
+
+    @Test
+    public void dropsDatagramsTooShortToBePackets() throws IOException {
+        Router router = start(Router.builder());
+        alice.send(ByteBuffer.wrap(new byte[Packet.MIN_LEN - 1]), router.getLocalAddress());
+        send(router, alice, bob, 1, new byte[0]);
+
+        // The short one is dropped and the router keeps forwarding.
+        assertEquals(1, Packet.fromBuffer(receive(bob)).getSequenceNumber());
+        assertEquals(1, router.getDropped());
+    }
+
+    @Test
+    public void holdsAReorderedPacketBackForTheReorderDelay() throws IOException {
+        Router router = start(Router.builder().setReorderRate(1).setReorderDelay(100));
+        long sentAt = System.nanoTime();
+        send(router, alice, bob, 1, new byte[0]);
+
+        assertEquals(1, Packet.fromBuffer(receive(bob)).getSequenceNumber());
+        assertTrue(System.nanoTime() - sentAt >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1, router.getReordered());
+    }
+
+    @Test
+    public void makesTheSameDecisionsForTheSameSeed() throws IOException {
+        long[] dropped = new long[2];
+        for (int run = 0; run < 2; run++) {
+            Router router = start(Router.builder().setDropRate(0.5).setDuplicateRate(0.2).setSeed(6411));
+            for (int i = 0; i < 200; i++) {
+                send(router, alice, bob, i, new byte[0]);
+            }
+            await("received", router::getReceived, 200);
+            dropped[run] = router.getDropped();
+        }
+        assertEquals(dropped[0], dropped[1]);
+        assertTrue(dropped[0] > 50 && dropped[0] < 150);
+    }
+
+    @Test
+    public void drawsDelaysWithinTheirRange() {
+        Random random = new Random(1);
+        DelayDistribution uniform = DelayDistribution.uniform(5, 10);
+        DelayDistribution exponential = DelayDistribution.exponential(5, 20, 50);
+        for (int i = 0; i < 10000; i++) {
+            long delay = uniform.nextDelayMillis(random);
+            assertTrue(delay + " out of range", delay >= 5 && delay <= 10);
+            delay = exponential.nextDelayMillis(random);
+            assertTrue(delay + " out of range", delay >= 5 && delay <= 50);
+        }
+        assertEquals(0, DelayDistribution.forName("uniform", 0, 0).nextDelayMillis(random));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRates() {
+        Router.builder().setDropRate(1.5);
+    }
+
+    private Router start(Router.Builder builder) throws IOException {
+        Router router = builder.setPort(0).setBufferPool(pool).create();
+        routers.add(router);
+        return router.start();
+    }
+
+    private DatagramChannel open() throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.bind(new InetSocketAddress(localhost, 0));
+        channel.configureBlocking(false);
+        return channel;
+    }
+
+    private void send(Router router, DatagramChannel from, DatagramChannel to, long sequenceNumber, byte[] payload)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_LEN);
+        Packet.writeHeader(buf, Packet.DATA, sequenceNumber, Packet.addressBits(localhost), port(to));
+        buf.put(payload);
+        buf.flip();
+        from.send(buf, new InetSocketAddress(localhost, router.getLocalAddress().getPort()));
+    }
+
+    private static ByteBuffer receive(DatagramChannel channel) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(Packet.MAX_LEN);
+        long deadline = System.nanoTime() + DEADLINE_NANOS;
+        while (channel.receive(buf) == null) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("Nothing forwarded");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void await(String counted, LongSupplier counter, long count) {
+        long deadline = System.nanoTime() + DEADLINE_NANOS;
+        while (counter.getAsLong() < count) {
+            if (System.nanoTime() - deadline > 0) {
+                fail("Router " + counted + " " + counter.getAsLong() + " of " + count);
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static int port(DatagramChannel channel) throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+}